@@ -0,0 +1,105 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Разложение полутонового изображения сразу на восемь битовых плоскостей за одно чтение пикселей.
+ * Плоскость k хранится упакованно: {@code planes[k-1][i >>> 6]}, бит {@code i & 63} — бит k пикселя i
+ * (индекс y*w+x). Восемь пикселей читаются одним long и транспонируются как матрица 8×8 бит, так что
+ * каждая плоскость получает байт за раз. Число единиц каждой плоскости считается Long.bitCount по словам;
+ * доли нулей, энтропия и ч/б визуализации выводятся из битсетов без повторного чтения изображения.
+ */
+public final class BitPlaneSet {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    final int w;
+    final int h;
+    final int n;
+    final long[][] planes;
+    /** Единиц в плоскости k — по индексу k-1. */
+    final long[] ones;
+
+    private BitPlaneSet(int w, int h, long[][] planes, long[] ones) {
+        this.w = w;
+        this.h = h;
+        this.n = w * h;
+        this.planes = planes;
+        this.ones = ones;
+    }
+
+    public static BitPlaneSet decompose(byte[] px, int w, int h) {
+        int n = w * h;
+        int words = (n + 63) >>> 6;
+        long[][] planes = new long[8][words];
+        int fullWords = n >>> 6;
+        for (int wi = 0; wi < fullWords; wi++) {
+            long p0 = 0, p1 = 0, p2 = 0, p3 = 0, p4 = 0, p5 = 0, p6 = 0, p7 = 0;
+            int base = wi << 6;
+            for (int g = 0; g < 8; g++) {
+                long t = transpose8((long) LONGS.get(px, base + (g << 3)));
+                int s = g << 3;
+                p0 |= (t & 0xFF) << s;
+                p1 |= ((t >>> 8) & 0xFF) << s;
+                p2 |= ((t >>> 16) & 0xFF) << s;
+                p3 |= ((t >>> 24) & 0xFF) << s;
+                p4 |= ((t >>> 32) & 0xFF) << s;
+                p5 |= ((t >>> 40) & 0xFF) << s;
+                p6 |= ((t >>> 48) & 0xFF) << s;
+                p7 |= (t >>> 56) << s;
+            }
+            planes[0][wi] = p0;
+            planes[1][wi] = p1;
+            planes[2][wi] = p2;
+            planes[3][wi] = p3;
+            planes[4][wi] = p4;
+            planes[5][wi] = p5;
+            planes[6][wi] = p6;
+            planes[7][wi] = p7;
+        }
+        for (int i = fullWords << 6; i < n; i++) {
+            int v = px[i];
+            for (int k = 0; k < 8; k++) {
+                planes[k][i >>> 6] |= (long) ((v >> k) & 1) << (i & 63);
+            }
+        }
+        long[] ones = new long[8];
+        for (int k = 0; k < 8; k++) {
+            long c = 0;
+            for (long word : planes[k]) {
+                c += Long.bitCount(word);
+            }
+            ones[k] = c;
+        }
+        return new BitPlaneSet(w, h, planes, ones);
+    }
+
+    /**
+     * Транспонирование матрицы 8×8 бит (бит 8*r+c -> бит 8*c+r): из 8 пикселей по байту
+     * получается 8 байт, байт b которых — биты плоскости b+1 этих пикселей.
+     */
+    static long transpose8(long x) {
+        long t = (x ^ (x >>> 7)) & 0x00AA00AA00AA00AAL;
+        x = x ^ t ^ (t << 7);
+        t = (x ^ (x >>> 14)) & 0x0000CCCC0000CCCCL;
+        x = x ^ t ^ (t << 14);
+        t = (x ^ (x >>> 28)) & 0x00000000F0F0F0F0L;
+        return x ^ t ^ (t << 28);
+    }
+
+    public long ones(int k) {
+        return ones[k - 1];
+    }
+
+    public long zeros(int k) {
+        return n - ones[k - 1];
+    }
+
+    /** Ч/б визуализация плоскости k в dst (бит 1 — 0xFF, бит 0 — 0x00). */
+    public void toMask(int k, byte[] dst) {
+        long[] p = planes[k - 1];
+        for (int i = 0; i < n; i++) {
+            dst[i] = (byte) -((p[i >>> 6] >>> i) & 1);
+        }
+    }
+}
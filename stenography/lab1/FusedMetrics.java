@@ -0,0 +1,45 @@
+/**
+ * Метрики пары контейнер/стего за один проход по массивам пикселей: сумма квадратов разностей (MSE),
+ * обе гистограммы на 256 уровней и максимум |a−b|. Нули битовых плоскостей считает BitPlaneSet.
+ */
+public final class FusedMetrics {
+
+    final double mse;
+    final int maxAbsDiff;
+    final long[] histA;
+    final long[] histB;
+
+    private FusedMetrics(double mse, int maxAbsDiff, long[] histA, long[] histB) {
+        this.mse = mse;
+        this.maxAbsDiff = maxAbsDiff;
+        this.histA = histA;
+        this.histB = histB;
+    }
+
+    /** a, b — пиксели y*w+x одинакового размера, n — число пикселей. */
+    public static FusedMetrics compute(byte[] a, byte[] b, int n) {
+        int[] ha = new int[256];
+        int[] hb = new int[256];
+        long sumSq = 0;
+        int maxd = 0;
+        for (int i = 0; i < n; i++) {
+            int va = a[i] & 0xFF;
+            int vb = b[i] & 0xFF;
+            ha[va]++;
+            hb[vb]++;
+            int d = va - vb;
+            sumSq += d * d;
+            int ad = Math.abs(d);
+            maxd = Math.max(maxd, ad);
+        }
+        return new FusedMetrics(sumSq / (double) n, maxd, widen(ha), widen(hb));
+    }
+
+    private static long[] widen(int[] h) {
+        long[] out = new long[h.length];
+        for (int i = 0; i < h.length; i++) {
+            out[i] = h[i];
+        }
+        return out;
+    }
+}
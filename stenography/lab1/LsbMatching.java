@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.SplittableRandom;
+
+/**
+ * LSB-согласование (±1): если младший бит пикселя не равен биту сообщения, к значению случайно
+ * прибавляется или вычитается 1 (0 -> 1, 255 -> 254), а не заменяется бит — гистограмма не получает
+ * характерных для LSB-замены пар, которые ловят хи-квадрат и RS ({@link Steganalysis}).
+ * Пиксели обходятся в порядке ключевого псевдослучайного блуждания {@link Walk}: позиции выдаются
+ * по одной, полная перестановка W×H не строится. В начале обхода — 64 бита заголовка
+ * (длина сообщения и CRC32), затем сообщение; извлечение читает младшие биты по тому же обходу.
+ */
+final class LsbMatching {
+
+    static final int HEADER_BITS = 64;
+
+    private LsbMatching() {
+    }
+
+    /**
+     * Ключевая перестановка индексов 0..n-1, выдаваемая лениво: полнопериодный LCG по модулю 2^b ≥ n
+     * (c нечётно, a ≡ 1 mod 4), к состоянию применяется биекция на b битах (умножение на нечётное и
+     * xorshift), значения ≥ n пропускаются — каждый индекс встречается ровно один раз.
+     */
+    static final class Walk {
+        private final int n;
+        private final long mask;
+        private final int shift;
+        private final long a;
+        private final long c;
+        private final long m1;
+        private final long m2;
+        private long x;
+
+        Walk(long seed, int n) {
+            if (n <= 0) {
+                throw new IllegalArgumentException("n must be positive");
+            }
+            int bits = Math.max(2, 64 - Long.numberOfLeadingZeros(n - 1L));
+            this.n = n;
+            this.mask = (1L << bits) - 1;
+            this.shift = Math.max(1, bits / 2);
+            SplittableRandom r = new SplittableRandom(seed);
+            this.a = (r.nextLong() & mask & ~3L) | 1;
+            this.c = (r.nextLong() & mask) | 1;
+            this.m1 = r.nextLong() | 1;
+            this.m2 = r.nextLong() | 1;
+            this.x = r.nextLong() & mask;
+        }
+
+        int next() {
+            long v;
+            do {
+                x = (a * x + c) & mask;
+                v = (x * m1) & mask;
+                v ^= v >>> shift;
+                v = (v * m2) & mask;
+                v ^= v >>> shift;
+            } while (v >= n);
+            return (int) v;
+        }
+    }
+
+    static int capacityBytes(int pixels) {
+        return Math.max(0, (pixels - HEADER_BITS) / 8);
+    }
+
+    /** Внедряет заголовок и сообщение (обрезанное по ёмкости); возвращает число записанных байт. */
+    static int embed(byte[] px, int pixels, byte[] message, String key) {
+        if (pixels < HEADER_BITS) {
+            throw new IllegalArgumentException("Image is too small for the LSB matching header");
+        }
+        int len = Math.min(message.length, capacityBytes(pixels));
+        long seed = seedFromKey(key);
+        Walk walk = new Walk(seed, pixels);
+        SplittableRandom sign = new SplittableRandom(~seed);
+        long head = ((long) len << 32) | (StegoHeader.crc32(message, 0, len) & 0xFFFFFFFFL);
+        for (int i = HEADER_BITS - 1; i >= 0; i--) {
+            match(px, walk.next(), (int) (head >>> i) & 1, sign);
+        }
+        for (int i = 0; i < len; i++) {
+            int b = message[i];
+            for (int j = 7; j >= 0; j--) {
+                match(px, walk.next(), (b >>> j) & 1, sign);
+            }
+        }
+        return len;
+    }
+
+    private static void match(byte[] px, int p, int bit, SplittableRandom sign) {
+        int v = px[p] & 0xFF;
+        if ((v & 1) != bit) {
+            px[p] = (byte) (v == 0 ? 1 : v == 255 ? 254 : sign.nextBoolean() ? v + 1 : v - 1);
+        }
+    }
+
+    /** Читает заголовок и сообщение по обходу ключа; проверяет длину и CRC32. */
+    static byte[] extract(byte[] px, int pixels, String key) throws IOException {
+        if (pixels < HEADER_BITS) {
+            throw new IOException("Image is too small for the LSB matching header");
+        }
+        Walk walk = new Walk(seedFromKey(key), pixels);
+        long head = 0;
+        for (int i = 0; i < HEADER_BITS; i++) {
+            head = (head << 1) | (px[walk.next()] & 1);
+        }
+        long len = head >>> 32;
+        if (len > capacityBytes(pixels)) {
+            throw new IOException("No LSB matching message for this key (length " + len + " exceeds capacity)");
+        }
+        byte[] out = new byte[(int) len];
+        for (int i = 0; i < out.length; i++) {
+            int b = 0;
+            for (int j = 0; j < 8; j++) {
+                b = (b << 1) | (px[walk.next()] & 1);
+            }
+            out[i] = (byte) b;
+        }
+        if (StegoHeader.crc32(out, 0, out.length) != (int) head) {
+            throw new IOException("CRC32 mismatch: wrong key or damaged message");
+        }
+        return out;
+    }
+
+    static long seedFromKey(String key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] d = md.digest(key.getBytes(StandardCharsets.UTF_8));
+            long s = 0;
+            for (int i = 0; i < 8; i++) {
+                s = (s << 8) | (d[i] & 0xFFL);
+            }
+            return s;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+import java.io.IOException;
+
+/**
+ * Матричное внедрение (как в F5) кодом Хэмминга (1, 2^p−1, p): младшие биты блока из n = 2^p−1 пикселей
+ * несут p бит сообщения — синдром блока (XOR номеров 1..n пикселей с единичным младшим битом).
+ * Чтобы синдром стал равен порции сообщения, меняется не больше одного пикселя (номер s XOR m),
+ * тогда как при LSB-замене меняется в среднем половина использованных пикселей.
+ * Синдром считается пословно: младшие биты блока собираются в long, бит j синдрома — чётность
+ * {@code bitCount(x & columns[j])}, где columns[j] — таблица позиций с единицей в бите j номера.
+ * <p>
+ * Раскладка: p — в младших битах первых 8 пикселей, затем блоками с пикселя 8 — 64 бита заголовка
+ * (длина и CRC32) и сообщение.
+ */
+final class MatrixEmbedding {
+
+    static final int P_PIXELS = 8;
+    static final int HEADER_BITS = 64;
+    static final int MAX_P = 6;
+
+    final int p;
+    final int n;
+    private final long[] columns;
+
+    MatrixEmbedding(int p) {
+        if (p < 1 || p > MAX_P) {
+            throw new IllegalArgumentException("p must be in 1.." + MAX_P);
+        }
+        this.p = p;
+        this.n = (1 << p) - 1;
+        this.columns = new long[p];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < p; j++) {
+                if (((i + 1) >>> j & 1) != 0) {
+                    columns[j] |= 1L << i;
+                }
+            }
+        }
+    }
+
+    /** Итог внедрения: байт сообщения, изменённых пикселей и пикселей в использованных блоках. */
+    static final class Stats {
+        final int written;
+        final int changed;
+        final int usedPixels;
+
+        Stats(int written, int changed, int usedPixels) {
+            this.written = written;
+            this.changed = changed;
+            this.usedPixels = usedPixels;
+        }
+    }
+
+    long capacityBits(int pixels) {
+        return pixels <= P_PIXELS ? 0 : (long) ((pixels - P_PIXELS) / n) * p;
+    }
+
+    int capacityBytes(int pixels) {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, (capacityBits(pixels) - HEADER_BITS) / 8));
+    }
+
+    /** Наибольшее p, при котором сообщение помещается целиком (чем больше p, тем меньше изменений на бит). */
+    static int choose(int pixels, int messageBytes) {
+        for (int p = MAX_P; p > 1; p--) {
+            if (new MatrixEmbedding(p).capacityBytes(pixels) >= messageBytes) {
+                return p;
+            }
+        }
+        return 1;
+    }
+
+    int syndrome(long x) {
+        int s = 0;
+        for (int j = 0; j < p; j++) {
+            s |= (Long.bitCount(x & columns[j]) & 1) << j;
+        }
+        return s;
+    }
+
+    private long gather(byte[] px, int base) {
+        long x = 0;
+        for (int i = 0; i < n; i++) {
+            x |= (long) (px[base + i] & 1) << i;
+        }
+        return x;
+    }
+
+    Stats embed(byte[] px, int pixels, byte[] message) {
+        if (pixels <= P_PIXELS + n) {
+            throw new IllegalArgumentException("Image is too small for matrix embedding");
+        }
+        int len = Math.min(message.length, capacityBytes(pixels));
+        byte[] stream = new byte[HEADER_BITS / 8 + len];
+        int crc = StegoHeader.crc32(message, 0, len);
+        for (int i = 0; i < 4; i++) {
+            stream[i] = (byte) (len >>> (24 - 8 * i));
+            stream[4 + i] = (byte) (crc >>> (24 - 8 * i));
+        }
+        System.arraycopy(message, 0, stream, HEADER_BITS / 8, len);
+
+        for (int i = 0; i < P_PIXELS; i++) {
+            px[i] = (byte) ((px[i] & ~1) | (p >>> (P_PIXELS - 1 - i) & 1));
+        }
+        long totalBits = stream.length * 8L;
+        int changed = 0;
+        int base = P_PIXELS;
+        for (long bit = 0; bit < totalBits; bit += p, base += n) {
+            int m = 0;
+            for (int j = 0; j < p; j++) {
+                long b = bit + j;
+                m = (m << 1) | (b < totalBits ? stream[(int) (b >>> 3)] >>> (7 - (int) (b & 7)) & 1 : 0);
+            }
+            int d = syndrome(gather(px, base)) ^ m;
+            if (d != 0) {
+                px[base + d - 1] ^= 1;
+                changed++;
+            }
+        }
+        return new Stats(len, changed, base - P_PIXELS);
+    }
+
+    static byte[] extract(byte[] px, int pixels) throws IOException {
+        if (pixels <= P_PIXELS) {
+            throw new IOException("Image is too small for matrix embedding");
+        }
+        int p = 0;
+        for (int i = 0; i < P_PIXELS; i++) {
+            p = (p << 1) | (px[i] & 1);
+        }
+        if (p < 1 || p > MAX_P) {
+            throw new IOException("No matrix-embedded message (p = " + p + ")");
+        }
+        MatrixEmbedding code = new MatrixEmbedding(p);
+        byte[] head = code.read(px, P_PIXELS, HEADER_BITS);
+        int len = ((head[0] & 0xFF) << 24) | ((head[1] & 0xFF) << 16) | ((head[2] & 0xFF) << 8) | (head[3] & 0xFF);
+        int crc = ((head[4] & 0xFF) << 24) | ((head[5] & 0xFF) << 16) | ((head[6] & 0xFF) << 8) | (head[7] & 0xFF);
+        if (len < 0 || len > code.capacityBytes(pixels)) {
+            throw new IOException("No matrix-embedded message (length " + len + " exceeds capacity)");
+        }
+        byte[] all = code.read(px, P_PIXELS, HEADER_BITS + len * 8L);
+        byte[] out = new byte[len];
+        System.arraycopy(all, HEADER_BITS / 8, out, 0, len);
+        if (StegoHeader.crc32(out, 0, len) != crc) {
+            throw new IOException("CRC32 mismatch: embedded message is damaged");
+        }
+        return out;
+    }
+
+    /** Первые bitLen бит потока синдромов, начиная с пикселя from. */
+    private byte[] read(byte[] px, int from, long bitLen) {
+        byte[] out = new byte[(int) ((bitLen + 7) / 8)];
+        int base = from;
+        for (long bit = 0; bit < bitLen; bit += p, base += n) {
+            int s = syndrome(gather(px, base));
+            for (int j = 0; j < p && bit + j < bitLen; j++) {
+                long b = bit + j;
+                out[(int) (b >>> 3)] |= (byte) ((s >>> (p - 1 - j) & 1) << (7 - (int) (b & 7)));
+            }
+        }
+        return out;
+    }
+}
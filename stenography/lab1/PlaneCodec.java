@@ -0,0 +1,276 @@
+/**
+ * Упаковка сообщения сразу в несколько битовых плоскостей: маска плоскостей (бит 0 — плоскость 1, LSB),
+ * на пиксель приходится bitCount(mask) бит сообщения. Порция бит кладётся в пиксель целиком:
+ * первый бит порции — в старшую выбранную плоскость. Раскладка и сборка идут по таблицам
+ * на 256 значений, без цикла по отдельным битам. Маска из одной плоскости k даёт тот же порядок,
+ * что и обычное LSB-встраивание в плоскость k.
+ */
+public final class PlaneCodec {
+
+    final int mask;
+    final int bitsPerPixel;
+    private final int keep;
+    private final int chunkMask;
+    /** Порция из bitsPerPixel бит -> биты пикселя на местах маски. */
+    private final int[] deposit;
+    /** Значение пикселя -> порция из его бит на местах маски. */
+    private final int[] gather;
+
+    public PlaneCodec(int mask) {
+        if (mask <= 0 || mask > 0xFF) {
+            throw new IllegalArgumentException("plane mask must select planes from 1..8");
+        }
+        this.mask = mask;
+        this.bitsPerPixel = Integer.bitCount(mask);
+        this.keep = ~mask & 0xFF;
+        this.chunkMask = (1 << bitsPerPixel) - 1;
+        this.deposit = new int[1 << bitsPerPixel];
+        this.gather = new int[256];
+        for (int v = 0; v < deposit.length; v++) {
+            int out = 0;
+            int bit = bitsPerPixel - 1;
+            for (int plane = 7; plane >= 0; plane--) {
+                if ((mask & (1 << plane)) != 0) {
+                    out |= ((v >> bit) & 1) << plane;
+                    bit--;
+                }
+            }
+            deposit[v] = out;
+        }
+        for (int p = 0; p < 256; p++) {
+            int v = 0;
+            for (int plane = 7; plane >= 0; plane--) {
+                if ((mask & (1 << plane)) != 0) {
+                    v = (v << 1) | ((p >> plane) & 1);
+                }
+            }
+            gather[p] = v;
+        }
+    }
+
+    public static PlaneCodec forPlane(int k) {
+        if (k < 1 || k > 8) {
+            throw new IllegalArgumentException("k must be in 1..8");
+        }
+        return new PlaneCodec(1 << (k - 1));
+    }
+
+    /** Разбор набора плоскостей: "3", "1-3", "1,2,4" (плоскости 1..8). */
+    public static int parsePlanes(String spec) {
+        String s = spec.trim();
+        if (s.isEmpty()) {
+            throw new IllegalArgumentException("plane list is empty");
+        }
+        int m = 0;
+        for (String part : s.split(",")) {
+            String p = part.trim();
+            int dash = p.indexOf('-');
+            int from;
+            int to;
+            try {
+                if (dash > 0) {
+                    from = Integer.parseInt(p.substring(0, dash).trim());
+                    to = Integer.parseInt(p.substring(dash + 1).trim());
+                } else {
+                    from = Integer.parseInt(p);
+                    to = from;
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bad plane list: " + spec);
+            }
+            if (from < 1 || to > 8 || from > to) {
+                throw new IllegalArgumentException("planes must be in 1..8: " + spec);
+            }
+            for (int k = from; k <= to; k++) {
+                m |= 1 << (k - 1);
+            }
+        }
+        return m;
+    }
+
+    /** Номер единственной плоскости маски; для маски из нескольких плоскостей — исключение. */
+    public static int singlePlane(int mask) {
+        if (Integer.bitCount(mask) != 1) {
+            throw new IllegalArgumentException("exactly one plane k is expected here");
+        }
+        return Integer.numberOfTrailingZeros(mask) + 1;
+    }
+
+    /** Маска в виде списка плоскостей, например "1,2,3". */
+    public static String describe(int mask) {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 1; k <= 8; k++) {
+            if ((mask & (1 << (k - 1))) != 0) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(k);
+            }
+        }
+        return sb.toString();
+    }
+
+    public long capacityBits(int pixels) {
+        return (long) pixels * bitsPerPixel;
+    }
+
+    /**
+     * Внедряет сообщение в пиксели [fromPixel, toPixel). Возвращает число записанных бит
+     * (меньше 8*len, если не хватило ёмкости; тогда пишется префикс сообщения).
+     */
+    public int embed(byte[] px, int fromPixel, int toPixel, byte[] message) {
+        int total = (int) Math.min((long) message.length * 8, capacityBits(toPixel - fromPixel));
+        int full = total >>> 3;
+        // горячий цикл на локальных переменных; хвост дописывает Writer
+        int bpp = bitsPerPixel;
+        int acc = 0;
+        int accBits = 0;
+        int p = fromPixel;
+        int j = 0;
+        if ((8 % bpp) == 0) {
+            // 1, 2, 4, 8 плоскостей: байт ровно на 8/bpp пикселей, без накопителя
+            for (; j < full; j++) {
+                int b = message[j] & 0xFF;
+                for (int s = 8 - bpp; s >= 0; s -= bpp) {
+                    px[p] = (byte) ((px[p] & keep) | deposit[(b >>> s) & chunkMask]);
+                    p++;
+                }
+            }
+        }
+        for (; j < full; j++) {
+            acc = (acc << 8) | (message[j] & 0xFF);
+            accBits += 8;
+            while (accBits >= bpp) {
+                accBits -= bpp;
+                px[p] = (byte) ((px[p] & keep) | deposit[(acc >>> accBits) & chunkMask]);
+                p++;
+            }
+        }
+        Writer wr = new Writer(px, p, toPixel);
+        wr.acc = acc;
+        wr.accBits = accBits;
+        int rest = total & 7;
+        if (rest != 0) {
+            wr.writeBits((message[full] & 0xFF) >>> (8 - rest), rest);
+        }
+        wr.flush();
+        return total;
+    }
+
+    /** Извлекает bitLen бит, начиная с пикселя fromPixel; bitLen не больше ёмкости. */
+    public byte[] extract(byte[] px, int fromPixel, int bitLen) {
+        byte[] result = new byte[(bitLen + 7) / 8];
+        int full = bitLen >>> 3;
+        int bpp = bitsPerPixel;
+        int acc = 0;
+        int accBits = 0;
+        int p = fromPixel;
+        for (int j = 0; j < full; j++) {
+            while (accBits < 8) {
+                acc = (acc << bpp) | gather[px[p++] & 0xFF];
+                accBits += bpp;
+            }
+            accBits -= 8;
+            result[j] = (byte) (acc >>> accBits);
+        }
+        int rest = bitLen & 7;
+        if (rest != 0) {
+            Reader rd = new Reader(px, p);
+            rd.acc = acc;
+            rd.accBits = accBits;
+            result[full] = (byte) (rd.readBits(rest) << (8 - rest));
+        }
+        return result;
+    }
+
+    public Writer writer(byte[] px, int fromPixel, int toPixel) {
+        return new Writer(px, fromPixel, toPixel);
+    }
+
+    public Reader reader(byte[] px, int fromPixel) {
+        return new Reader(px, fromPixel);
+    }
+
+    /** Последовательная запись бит в пиксели [from, to); неполная последняя порция дописывается flush(). */
+    public final class Writer {
+        private final byte[] px;
+        private final int end;
+        private int pos;
+        private int acc;
+        private int accBits;
+
+        Writer(byte[] px, int from, int to) {
+            this.px = px;
+            this.pos = from;
+            this.end = to;
+        }
+
+        public long remainingBits() {
+            return (long) (end - pos) * bitsPerPixel - accBits;
+        }
+
+        /** Следующий пиксель после записанных (после flush). */
+        public int position() {
+            return pos;
+        }
+
+        public void write(int b) {
+            writeBits(b & 0xFF, 8);
+        }
+
+        /** Младшие n бит value (n до 16), старший первым. Вызывающий следит за remainingBits(). */
+        public void writeBits(int value, int n) {
+            acc = (acc << n) | (value & ((1 << n) - 1));
+            accBits += n;
+            while (accBits >= bitsPerPixel) {
+                accBits -= bitsPerPixel;
+                int p = pos++;
+                px[p] = (byte) ((px[p] & keep) | deposit[(acc >>> accBits) & chunkMask]);
+            }
+        }
+
+        /** Дописывает неполную порцию, сохраняя в пикселе младшие из выбранных плоскостей. */
+        public void flush() {
+            if (accBits == 0) {
+                return;
+            }
+            int pad = bitsPerPixel - accBits;
+            int p = pos++;
+            int old = gather[px[p] & 0xFF] & ((1 << pad) - 1);
+            int chunk = (((acc << pad) & chunkMask) | old);
+            px[p] = (byte) ((px[p] & keep) | deposit[chunk]);
+            accBits = 0;
+        }
+    }
+
+    /** Последовательное чтение бит из пикселей, начиная с from. */
+    public final class Reader {
+        private final byte[] px;
+        private int pos;
+        private int acc;
+        private int accBits;
+
+        Reader(byte[] px, int from) {
+            this.px = px;
+            this.pos = from;
+        }
+
+        /** Пиксель, с которого начнётся следующая порция (буфер прочитанных бит не учитывается). */
+        public int position() {
+            return pos;
+        }
+
+        public int read() {
+            return readBits(8);
+        }
+
+        public int readBits(int n) {
+            while (accBits < n) {
+                acc = (acc << bitsPerPixel) | gather[px[pos++] & 0xFF];
+                accBits += bitsPerPixel;
+            }
+            accBits -= n;
+            return (acc >>> accBits) & ((1 << n) - 1);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Извлечение битовых плоскостей из массива пикселей y*w+x в виде ч/б масок (бит 1 — 0xFF, бит 0 — 0x00).
+ * {@link #get()} возвращает векторную реализацию на jdk.incubator.vector, если она скомпилирована
+ * (vector/VectorPlaneKernel.java) и JVM запущена с {@code --add-modules jdk.incubator.vector};
+ * иначе — скалярную. Одну плоскость через {@link #plane} строит режим 1 StegoTool; исследование
+ * раскладывает изображение через {@link BitPlaneSet}, так что {@link #allPlanes} (и векторный путь
+ * для него) остаётся эталоном для сравнения в StegoBench.
+ */
+interface PlaneKernel {
+
+    /** dst[i] = 0xFF, если бит k (1..8) пикселя src[i] равен 1, иначе 0. */
+    void plane(byte[] src, byte[] dst, int n, int k);
+
+    /** Все восемь плоскостей за одно чтение src: dst[k-1] — плоскость k. */
+    void allPlanes(byte[] src, byte[][] dst, int n);
+
+    String name();
+
+    static PlaneKernel get() {
+        return Holder.INSTANCE;
+    }
+
+    static PlaneKernel scalar() {
+        return Scalar.INSTANCE;
+    }
+
+    final class Holder {
+        static final PlaneKernel INSTANCE = load();
+
+        private Holder() {
+        }
+
+        private static PlaneKernel load() {
+            try {
+                return (PlaneKernel) Class.forName("VectorPlaneKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // класс не собран или модуль инкубатора не подключён
+                return Scalar.INSTANCE;
+            }
+        }
+    }
+
+    final class Scalar implements PlaneKernel {
+        static final Scalar INSTANCE = new Scalar();
+        private static final int BLOCK = 4096;
+
+        private Scalar() {
+        }
+
+        @Override
+        public void plane(byte[] src, byte[] dst, int n, int k) {
+            int shift = k - 1;
+            for (int i = 0; i < n; i++) {
+                // 0 -> 0x00, 1 -> 0xFF без ветвления
+                dst[i] = (byte) -((src[i] >> shift) & 1);
+            }
+        }
+
+        /**
+         * Блоками по BLOCK пикселей: блок src читается из памяти один раз, восемь простых проходов
+         * по нему идут из L1 и векторизуются JIT-компилятором.
+         */
+        @Override
+        public void allPlanes(byte[] src, byte[][] dst, int n) {
+            for (int from = 0; from < n; from += BLOCK) {
+                int to = Math.min(n, from + BLOCK);
+                for (int k = 0; k < 8; k++) {
+                    byte[] d = dst[k];
+                    for (int i = from; i < to; i++) {
+                        d[i] = (byte) -((src[i] >> k) & 1);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String name() {
+            return "scalar";
+        }
+    }
+}
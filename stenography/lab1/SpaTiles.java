@@ -0,0 +1,156 @@
+/**
+ * Sample Pair Analysis (Думитреску–Ву–Ван) по плиткам: за один проход по растру для каждой плитки
+ * считаются счётчики пар соседних по строке пикселей (u, v) — X, Y, Z, W и число пар P, — и из них
+ * строятся таблицы сумм по сетке плиток. Оценка доли внедрения для любого прямоугольника плиток
+ * получается за O(1) из четырёх обращений к таблицам, без повторного чтения пикселей; так
+ * локализуется частичная нагрузка, например последовательное внедрение StegoTool с верхних строк.
+ * <ul>
+ *   <li>X: (v чётно и u &lt; v) или (v нечётно и u &gt; v);</li>
+ *   <li>Y: (v чётно и u &gt; v) или (v нечётно и u &lt; v);</li>
+ *   <li>Z: u = v; W: пары вида (2k, 2k+1) и (2k+1, 2k), входят в Y.</li>
+ * </ul>
+ * Доля p — меньший корень (W+Z)/2 · p² + (2X − P) · p + Y − X = 0. Пара относится к плитке левого пикселя.
+ */
+final class SpaTiles {
+
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int Z = 2;
+    private static final int W = 3;
+    private static final int P = 4;
+    private static final int COUNTERS = 5;
+
+    /** Полоса плиток считается заполненной сообщением, если её оценка не ниже этой. */
+    static final double BAND_THRESHOLD = 0.5;
+
+    final int tile;
+    final int tilesX;
+    final int tilesY;
+    /** Таблицы сумм: sums[c][(ty)*(tilesX+1)+tx] — сумма счётчика c по плиткам [0,tx)×[0,ty). */
+    private final long[][] sums;
+
+    private SpaTiles(int tile, int tilesX, int tilesY, long[][] sums) {
+        this.tile = tile;
+        this.tilesX = tilesX;
+        this.tilesY = tilesY;
+        this.sums = sums;
+    }
+
+    static SpaTiles build(byte[] px, int w, int h, int tile) {
+        if (tile < 2) {
+            throw new IllegalArgumentException("tile must be at least 2");
+        }
+        int tilesX = (w + tile - 1) / tile;
+        int tilesY = (h + tile - 1) / tile;
+        long[][] counts = new long[COUNTERS][tilesX * tilesY];
+        for (int y = 0; y < h; y++) {
+            int row = y * w;
+            int tileRow = (y / tile) * tilesX;
+            for (int tx = 0; tx < tilesX; tx++) {
+                int x0 = tx * tile;
+                int x1 = Math.min(w - 1, x0 + tile);
+                long cx = 0;
+                long cy = 0;
+                long cz = 0;
+                long cw = 0;
+                for (int x = x0; x < x1; x++) {
+                    int u = px[row + x] & 0xFF;
+                    int v = px[row + x + 1] & 0xFF;
+                    if (u == v) {
+                        cz++;
+                    } else if ((u < v) == ((v & 1) == 0)) {
+                        cx++;
+                    } else {
+                        cy++;
+                        if ((u >>> 1) == (v >>> 1)) {
+                            cw++;
+                        }
+                    }
+                }
+                int t = tileRow + tx;
+                counts[X][t] += cx;
+                counts[Y][t] += cy;
+                counts[Z][t] += cz;
+                counts[W][t] += cw;
+                counts[P][t] += x1 - x0;
+            }
+        }
+        int stride = tilesX + 1;
+        long[][] sums = new long[COUNTERS][stride * (tilesY + 1)];
+        for (int c = 0; c < COUNTERS; c++) {
+            long[] s = sums[c];
+            long[] cnt = counts[c];
+            for (int ty = 0; ty < tilesY; ty++) {
+                long rowSum = 0;
+                for (int tx = 0; tx < tilesX; tx++) {
+                    rowSum += cnt[ty * tilesX + tx];
+                    s[(ty + 1) * stride + tx + 1] = s[ty * stride + tx + 1] + rowSum;
+                }
+            }
+        }
+        return new SpaTiles(tile, tilesX, tilesY, sums);
+    }
+
+    /** Оценка доли внедрения для плиток [tx0, tx1) × [ty0, ty1). */
+    double rate(int tx0, int ty0, int tx1, int ty1) {
+        return estimate(sum(X, tx0, ty0, tx1, ty1), sum(Y, tx0, ty0, tx1, ty1), sum(Z, tx0, ty0, tx1, ty1),
+                sum(W, tx0, ty0, tx1, ty1), sum(P, tx0, ty0, tx1, ty1));
+    }
+
+    double tileRate(int tx, int ty) {
+        return rate(tx, ty, tx + 1, ty + 1);
+    }
+
+    double globalRate() {
+        return rate(0, 0, tilesX, tilesY);
+    }
+
+    /** Карта оценок всех плиток, индекс ty*tilesX+tx. */
+    double[] tileRates() {
+        double[] r = new double[tilesX * tilesY];
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                r[ty * tilesX + tx] = tileRate(tx, ty);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Доля растра, занятая последовательной нагрузкой с верхних строк: число полос плиток подряд сверху
+     * с оценкой не ниже BAND_THRESHOLD плюс оценка следующей полосы (заполненной частично).
+     */
+    double prefixRate() {
+        int k = 0;
+        while (k < tilesY && rate(0, k, tilesX, k + 1) >= BAND_THRESHOLD) {
+            k++;
+        }
+        double partial = k < tilesY ? rate(0, k, tilesX, k + 1) : 0;
+        return (k + partial) / tilesY;
+    }
+
+    private long sum(int c, int tx0, int ty0, int tx1, int ty1) {
+        long[] s = sums[c];
+        int stride = tilesX + 1;
+        return s[ty1 * stride + tx1] - s[ty0 * stride + tx1] - s[ty1 * stride + tx0] + s[ty0 * stride + tx0];
+    }
+
+    static double estimate(long x, long y, long z, long w, long p) {
+        if (p == 0) {
+            return Double.NaN;
+        }
+        double a = (w + z) / 2.0;
+        double b = 2.0 * x - p;
+        double c = y - x;
+        double r;
+        if (a == 0) {
+            r = b == 0 ? 0 : -c / b;
+        } else {
+            double disc = Math.sqrt(Math.max(0, b * b - 4 * a * c));
+            double r1 = (-b + disc) / (2 * a);
+            double r2 = (-b - disc) / (2 * a);
+            r = Math.min(r1, r2);
+        }
+        return Math.min(1, Math.max(0, r));
+    }
+}
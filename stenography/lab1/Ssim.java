@@ -0,0 +1,224 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * SSIM полутоновых изображений по массивам пикселей (индекс y*w+x), усреднение по валидной области
+ * без полей. Равномерное окно считается скользящими суммами: по каждому столбцу держатся суммы
+ * x, y, x², y², xy по строкам окна, по строке они сдвигаются на один столбец — O(1) на пиксель
+ * при любом размере окна и O(w) дополнительной памяти. Гауссово окно сепарабельно: O(win) на пиксель.
+ */
+public final class Ssim {
+
+    static final double L = 255.0;
+    static final double K1 = 0.01;
+    static final double K2 = 0.03;
+    static final double C1 = (K1 * L) * (K1 * L);
+    static final double C2 = (K2 * L) * (K2 * L);
+
+    private Ssim() {
+    }
+
+    /** Равномерное окно win×win (win нечётное). Совпадает с {@link #reference} с точностью до округления. */
+    public static double uniform(byte[] a, byte[] b, int w, int h, int win) {
+        checkWindow(w, h, win);
+        int n = win * win;
+        long[] cx = new long[w];
+        long[] cy = new long[w];
+        long[] cxx = new long[w];
+        long[] cyy = new long[w];
+        long[] cxy = new long[w];
+        for (int y = 0; y < win; y++) {
+            addRow(a, b, y * w, w, 1, cx, cy, cxx, cyy, cxy);
+        }
+        double sum = 0.0;
+        long cnt = 0;
+        for (int top = 0; top + win <= h; top++) {
+            if (top > 0) {
+                addRow(a, b, (top - 1) * w, w, -1, cx, cy, cxx, cyy, cxy);
+                addRow(a, b, (top + win - 1) * w, w, 1, cx, cy, cxx, cyy, cxy);
+            }
+            long sx = 0;
+            long sy = 0;
+            long sxx = 0;
+            long syy = 0;
+            long sxy = 0;
+            for (int x = 0; x < win; x++) {
+                sx += cx[x];
+                sy += cy[x];
+                sxx += cxx[x];
+                syy += cyy[x];
+                sxy += cxy[x];
+            }
+            for (int left = 0; ; left++) {
+                double mux = sx / (double) n;
+                double muy = sy / (double) n;
+                double vx = sxx / (double) n - mux * mux;
+                double vy = syy / (double) n - muy * muy;
+                double cov = sxy / (double) n - mux * muy;
+                double num = (2 * mux * muy + C1) * (2 * cov + C2);
+                double den = (mux * mux + muy * muy + C1) * (Math.max(vx, 0) + Math.max(vy, 0) + C2);
+                if (den > 0) {
+                    sum += num / den;
+                    cnt++;
+                }
+                int out = left;
+                int in = left + win;
+                if (in >= w) {
+                    break;
+                }
+                sx += cx[in] - cx[out];
+                sy += cy[in] - cy[out];
+                sxx += cxx[in] - cxx[out];
+                syy += cyy[in] - cyy[out];
+                sxy += cxy[in] - cxy[out];
+            }
+        }
+        return cnt == 0 ? Double.NaN : sum / cnt;
+    }
+
+    private static void addRow(byte[] a, byte[] b, int base, int w, int sign,
+                               long[] cx, long[] cy, long[] cxx, long[] cyy, long[] cxy) {
+        for (int x = 0; x < w; x++) {
+            int xv = a[base + x] & 0xFF;
+            int yv = b[base + x] & 0xFF;
+            cx[x] += sign * xv;
+            cy[x] += sign * yv;
+            cxx[x] += sign * xv * xv;
+            cyy[x] += sign * yv * yv;
+            cxy[x] += sign * xv * yv;
+        }
+    }
+
+    /**
+     * Гауссово окно win×win с параметром sigma (классический вариант — 11 и 1.5), веса нормированы.
+     * Свёртка сепарабельная: сначала по столбцам для текущей строки окна, затем по строке.
+     */
+    public static double gaussian(byte[] a, byte[] b, int w, int h, int win, double sigma) {
+        checkWindow(w, h, win);
+        if (!(sigma > 0)) {
+            throw new IllegalArgumentException("sigma must be positive");
+        }
+        double[] g = new double[win];
+        int r = win / 2;
+        double norm = 0;
+        for (int i = 0; i < win; i++) {
+            g[i] = Math.exp(-((i - r) * (i - r)) / (2 * sigma * sigma));
+            norm += g[i];
+        }
+        for (int i = 0; i < win; i++) {
+            g[i] /= norm;
+        }
+        double[] vx = new double[w];
+        double[] vy = new double[w];
+        double[] vxx = new double[w];
+        double[] vyy = new double[w];
+        double[] vxy = new double[w];
+        double sum = 0.0;
+        long cnt = 0;
+        for (int top = 0; top + win <= h; top++) {
+            Arrays.fill(vx, 0);
+            Arrays.fill(vy, 0);
+            Arrays.fill(vxx, 0);
+            Arrays.fill(vyy, 0);
+            Arrays.fill(vxy, 0);
+            for (int i = 0; i < win; i++) {
+                double gi = g[i];
+                int base = (top + i) * w;
+                for (int x = 0; x < w; x++) {
+                    double xv = a[base + x] & 0xFF;
+                    double yv = b[base + x] & 0xFF;
+                    vx[x] += gi * xv;
+                    vy[x] += gi * yv;
+                    vxx[x] += gi * xv * xv;
+                    vyy[x] += gi * yv * yv;
+                    vxy[x] += gi * xv * yv;
+                }
+            }
+            for (int left = 0; left + win <= w; left++) {
+                double mux = 0;
+                double muy = 0;
+                double mxx = 0;
+                double myy = 0;
+                double mxy = 0;
+                for (int j = 0; j < win; j++) {
+                    double gj = g[j];
+                    int x = left + j;
+                    mux += gj * vx[x];
+                    muy += gj * vy[x];
+                    mxx += gj * vxx[x];
+                    myy += gj * vyy[x];
+                    mxy += gj * vxy[x];
+                }
+                double sx = Math.max(mxx - mux * mux, 0);
+                double sy = Math.max(myy - muy * muy, 0);
+                double cov = mxy - mux * muy;
+                double num = (2 * mux * muy + C1) * (2 * cov + C2);
+                double den = (mux * mux + muy * muy + C1) * (sx + sy + C2);
+                if (den > 0) {
+                    sum += num / den;
+                    cnt++;
+                }
+            }
+        }
+        return cnt == 0 ? Double.NaN : sum / cnt;
+    }
+
+    private static void checkWindow(int w, int h, int win) {
+        if (win < 1 || (win & 1) == 0) {
+            throw new IllegalArgumentException("SSIM window must be odd and positive: " + win);
+        }
+        if (win > w || win > h) {
+            throw new IllegalArgumentException("SSIM window " + win + " is larger than image " + w + "x" + h);
+        }
+    }
+
+    /**
+     * Прежняя реализация (49×5 обращений к растру на пиксель при окне 7×7); эталон для проверки
+     * и замеров в SsimBench.
+     */
+    static double reference(BufferedImage a, BufferedImage b, int win) {
+        int r = win / 2;
+        int w = a.getWidth();
+        int h = a.getHeight();
+        WritableRaster ra = a.getRaster();
+        WritableRaster rb = b.getRaster();
+        double sum = 0.0;
+        long cnt = 0;
+        for (int y = r; y < h - r; y++) {
+            for (int x = r; x < w - r; x++) {
+                double mux = 0, muy = 0, muxx = 0, muyy = 0, mxy = 0;
+                int n = win * win;
+                for (int dy = -r; dy <= r; dy++) {
+                    for (int dx = -r; dx <= r; dx++) {
+                        double xv = ra.getSample(x + dx, y + dy, 0) & 0xFF;
+                        double yv = rb.getSample(x + dx, y + dy, 0) & 0xFF;
+                        mux += xv;
+                        muy += yv;
+                        muxx += xv * xv;
+                        muyy += yv * yv;
+                        mxy += xv * yv;
+                    }
+                }
+                mux /= n;
+                muy /= n;
+                double sx = muxx / n - mux * mux;
+                double sy = muyy / n - muy * muy;
+                double sxy = mxy / n - mux * muy;
+                if (sx < 0) {
+                    sx = 0;
+                }
+                if (sy < 0) {
+                    sy = 0;
+                }
+                double num = (2 * mux * muy + C1) * (2 * sxy + C2);
+                double den = (mux * mux + muy * muy + C1) * (sx + sy + C2);
+                if (den > 0) {
+                    sum += num / den;
+                    cnt++;
+                }
+            }
+        }
+        return cnt == 0 ? Double.NaN : sum / cnt;
+    }
+}
@@ -0,0 +1,80 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+/**
+ * Замер SSIM: прежняя реализация через getSample против скользящих сумм и гауссова окна,
+ * на контейнере 512×512 и синтетическом 4096×4096; заодно проверяется расхождение с эталоном (≤ 1e-9).
+ * <p>
+ * Запуск из каталога lab1: {@code java SsimBench [..\container1\1.bmp] [итераций]}
+ */
+public final class SsimBench {
+
+    private static final String DEFAULT_IMAGE = "../container1/1.bmp";
+    private static final int WIN = 7;
+
+    private SsimBench() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String path = args.length > 0 ? args[0] : DEFAULT_IMAGE;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        BufferedImage img = ImageIO.read(new File(path));
+        if (img == null) {
+            throw new IOException("Cannot read image: " + path);
+        }
+        run(path, img, lsbNoise(img, 1), iterations, iterations, 5);
+        BufferedImage big = synthetic(4096, 4096, 7);
+        run("synthetic", big, lsbNoise(big, 2), 2, Math.max(1, iterations / 10), 1);
+    }
+
+    private static void run(String name, BufferedImage a, BufferedImage b, int warmup, int iterations, int refIterations) {
+        int w = a.getWidth();
+        int h = a.getHeight();
+        byte[] pa = StegoResearch.pixels(a);
+        byte[] pb = StegoResearch.pixels(b);
+        long px = (long) w * h;
+        double ref = Ssim.reference(a, b, WIN);
+        double fast = Ssim.uniform(pa, pb, w, h, WIN);
+        System.out.println(String.format(Locale.ROOT, "%s %dx%d: SSIM ref=%.12f sliding=%.12f |diff|=%.3e gauss=%.12f",
+                name, w, h, ref, fast, Math.abs(ref - fast), Ssim.gaussian(pa, pb, w, h, 11, 1.5)));
+        if (Math.abs(ref - fast) > 1e-9) {
+            throw new IllegalStateException("sliding SSIM differs from reference by " + Math.abs(ref - fast));
+        }
+        StegoBench.report("ssim reference", px, "px", Math.min(warmup, refIterations), refIterations,
+                () -> Ssim.reference(a, b, WIN));
+        StegoBench.report("ssim sliding", px, "px", warmup, iterations, () -> Ssim.uniform(pa, pb, w, h, WIN));
+        StegoBench.report("ssim sliding 31", px, "px", warmup, iterations, () -> Ssim.uniform(pa, pb, w, h, 31));
+        StegoBench.report("ssim gauss 11", px, "px", warmup, iterations, () -> Ssim.gaussian(pa, pb, w, h, 11, 1.5));
+    }
+
+    /** Копия с записью случайных бит в LSB — типичная пара контейнер/стего. */
+    private static BufferedImage lsbNoise(BufferedImage src, long seed) {
+        int w = src.getWidth();
+        int h = src.getHeight();
+        BufferedImage dst = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] s = StegoResearch.pixels(src);
+        byte[] d = StegoTool.grayBytes(dst);
+        Random rnd = new Random(seed);
+        for (int i = 0; i < w * h; i++) {
+            d[i] = (byte) ((s[i] & 0xFE) | (rnd.nextInt() & 1));
+        }
+        return dst;
+    }
+
+    private static BufferedImage synthetic(int w, int h, long seed) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] px = StegoTool.grayBytes(img);
+        Random rnd = new Random(seed);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                double v = 128 + 60 * Math.sin(x / 37.0) * Math.cos(y / 53.0) + rnd.nextGaussian() * 12;
+                px[y * w + x] = (byte) Math.max(0, Math.min(255, (int) Math.round(v)));
+            }
+        }
+        return img;
+    }
+}
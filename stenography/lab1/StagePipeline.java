@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Трёхстадийный конвейер пакетной обработки: чтение -> вычисления -> запись, стадии связаны
+ * ограниченными очередями (чтение не убегает вперёд вычислений больше чем на queueCapacity элементов).
+ * Чтение и запись идут на виртуальных потоках (ждут диск), вычисления — на computeThreads
+ * платформенных потоках. Первая ошибка в любой стадии останавливает весь конвейер и пробрасывается из run().
+ *
+ * @param <J> задание
+ * @param <D> результат чтения
+ * @param <E> единица записи (одно задание может дать несколько)
+ */
+final class StagePipeline<J, D, E> {
+
+    interface Stage<A, B> {
+        B apply(A a) throws Exception;
+    }
+
+    interface Sink<A> {
+        void accept(A a) throws Exception;
+    }
+
+    private static final Object END = new Object();
+
+    private final int computeThreads;
+    private final int ioThreads;
+    private final int queueCapacity;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+    StagePipeline(int computeThreads, int ioThreads, int queueCapacity) {
+        this.computeThreads = Math.max(1, computeThreads);
+        this.ioThreads = Math.max(1, ioThreads);
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    void run(List<J> jobs, Stage<J, D> read, Stage<D, List<E>> compute, Sink<E> write) throws IOException {
+        BlockingQueue<Object> decoded = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Object> encoded = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger next = new AtomicInteger();
+
+        List<Thread> readers = start(ioThreads, true, () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < jobs.size()) {
+                put(decoded, read.apply(jobs.get(i)));
+            }
+        });
+        List<Thread> computers = start(computeThreads, false, () -> {
+            for (Object o = decoded.take(); o != END; o = decoded.take()) {
+                for (E e : compute.apply((D) o)) {
+                    put(encoded, e);
+                }
+            }
+        });
+        List<Thread> writers = start(ioThreads, true, () -> {
+            for (Object o = encoded.take(); o != END; o = encoded.take()) {
+                write.accept((E) o);
+            }
+        });
+
+        join(readers);
+        finish(decoded, computers.size());
+        join(computers);
+        finish(encoded, writers.size());
+        join(writers);
+
+        Throwable t = failure.get();
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t != null) {
+            throw new IOException(t);
+        }
+    }
+
+    private interface Body {
+        void run() throws Exception;
+    }
+
+    private List<Thread> start(int n, boolean virtual, Body body) {
+        List<Thread> started = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Runnable r = () -> {
+                try {
+                    body.run();
+                } catch (Throwable t) {
+                    fail(t);
+                }
+            };
+            Thread t = virtual ? Thread.ofVirtual().unstarted(r) : Thread.ofPlatform().unstarted(r);
+            synchronized (threads) {
+                threads.add(t);
+            }
+            started.add(t);
+            t.start();
+        }
+        return started;
+    }
+
+    /** put с проверкой сбоя: при остановке конвейера не висим на полной очереди. */
+    private void put(BlockingQueue<Object> q, Object item) throws InterruptedException {
+        while (!q.offer(item, 50, TimeUnit.MILLISECONDS)) {
+            if (failure.get() != null) {
+                throw new InterruptedException("pipeline aborted");
+            }
+        }
+    }
+
+    /** Сигнал конца потребителям стадии; после сбоя не нужен — потребители уже прерваны. */
+    private void finish(BlockingQueue<Object> q, int consumers) {
+        try {
+            for (int i = 0; i < consumers; i++) {
+                put(q, END);
+            }
+        } catch (InterruptedException e) {
+            // конвейер остановлен сбоем, он и будет проброшен из run()
+        }
+    }
+
+    private void fail(Throwable t) {
+        failure.compareAndSet(null, t);
+        synchronized (threads) {
+            for (Thread other : threads) {
+                if (other != Thread.currentThread()) {
+                    other.interrupt();
+                }
+            }
+        }
+    }
+
+    private void join(List<Thread> ts) throws IOException {
+        for (Thread t : ts) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            }
+        }
+    }
+}
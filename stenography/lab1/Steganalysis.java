@@ -0,0 +1,211 @@
+/**
+ * Стегоанализ LSB-замены на массиве пикселей серого изображения (индекс y*w+x):
+ * <ul>
+ *   <li>хи-квадрат Вестфельда–Пфицмана: в стего пары значений (2i, 2i+1) выравниваются по частоте;
+ *       p — вероятность внедрения, считается и по всему изображению, и по растущим префиксам растра
+ *       (как в исходной атаке): самый длинный префикс с p выше 0.5 оценивает долю последовательного
+ *       внедрения (так пишут StegoTool и StegoResearch: с пикселя 0);</li>
+ *   <li>RS-анализ Фридрих: группы по 4 пикселя вдоль строки, маска [0 1 1 0], регулярные/сингулярные
+ *       группы для прямого и сдвинутого переворота LSB до и после переворота всех LSB; из квадратного
+ *       уравнения — доля пикселей с сообщением.</li>
+ * </ul>
+ */
+final class Steganalysis {
+
+    /** Шагов префикса для последовательной оценки хи-квадрат. */
+    static final int CHI_STEPS = 100;
+    /** Пары с ожидаемой частотой не больше этой в статистику не входят. */
+    private static final double CHI_MIN_EXPECTED = 4.0;
+
+    final double chiP;
+    final double chiRate;
+    final double rsRate;
+    /** Доли R_M, S_M, R_-M, S_-M исходного изображения. */
+    final double rm;
+    final double sm;
+    final double rnm;
+    final double snm;
+
+    private Steganalysis(double chiP, double chiRate, double rsRate, double rm, double sm, double rnm, double snm) {
+        this.chiP = chiP;
+        this.chiRate = chiRate;
+        this.rsRate = rsRate;
+        this.rm = rm;
+        this.sm = sm;
+        this.rnm = rnm;
+        this.snm = snm;
+    }
+
+    static Steganalysis analyze(byte[] px, int w, int h) {
+        int n = w * h;
+        int[] hist = new int[256];
+        double chiRate = 0;
+        int from = 0;
+        double p = 0;
+        for (int s = 1; s <= CHI_STEPS; s++) {
+            int to = (int) ((long) n * s / CHI_STEPS);
+            for (int i = from; i < to; i++) {
+                hist[px[i] & 0xFF]++;
+            }
+            from = to;
+            p = chiSquareP(hist);
+            if (p > 0.5) {
+                chiRate = (double) s / CHI_STEPS;
+            }
+        }
+
+        long[] cnt = new long[8];
+        for (int y = 0; y < h; y++) {
+            int row = y * w;
+            for (int x = 0; x + 4 <= w; x += 4) {
+                int a = px[row + x] & 0xFF;
+                int b = px[row + x + 1] & 0xFF;
+                int c = px[row + x + 2] & 0xFF;
+                int d = px[row + x + 3] & 0xFF;
+                classify(a, b, c, d, cnt, 0);
+                classify(a ^ 1, b ^ 1, c ^ 1, d ^ 1, cnt, 4);
+            }
+        }
+        double groups = (double) h * (w / 4);
+        if (groups == 0) {
+            return new Steganalysis(p, chiRate, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        }
+        double rm = cnt[0] / groups;
+        double sm = cnt[1] / groups;
+        double rnm = cnt[2] / groups;
+        double snm = cnt[3] / groups;
+        double rsRate = rsEstimate(rm - sm, cnt[4] / groups - cnt[5] / groups,
+                rnm - snm, cnt[6] / groups - cnt[7] / groups);
+        return new Steganalysis(p, chiRate, rsRate, rm, sm, rnm, snm);
+    }
+
+    /** Вероятность внедрения по хи-квадрат для гистограммы (1 - функция распределения χ²). */
+    static double chiSquareP(int[] hist) {
+        double chi = 0;
+        int cells = 0;
+        for (int i = 0; i < 256; i += 2) {
+            double expected = (hist[i] + hist[i + 1]) / 2.0;
+            if (expected <= CHI_MIN_EXPECTED) {
+                continue;
+            }
+            double diff = hist[i] - expected;
+            chi += diff * diff / expected;
+            cells++;
+        }
+        if (cells < 2) {
+            return 0;
+        }
+        return 1 - regularizedGammaP((cells - 1) / 2.0, chi / 2);
+    }
+
+    /**
+     * Группа (a,b,c,d), маска [0 1 1 0]: F1 — переворот LSB (2k <-> 2k+1), F-1 — сдвинутый
+     * (2k-1 <-> 2k); функция гладкости — сумма модулей разностей соседей.
+     * cnt[at..at+3] = R_M, S_M, R_-M, S_-M.
+     */
+    private static void classify(int a, int b, int c, int d, long[] cnt, int at) {
+        int f = Math.abs(b - a) + Math.abs(c - b) + Math.abs(d - c);
+        int b1 = b ^ 1;
+        int c1 = c ^ 1;
+        int fp = Math.abs(b1 - a) + Math.abs(c1 - b1) + Math.abs(d - c1);
+        int bn = ((b + 1) ^ 1) - 1;
+        int cn = ((c + 1) ^ 1) - 1;
+        int fn = Math.abs(bn - a) + Math.abs(cn - bn) + Math.abs(d - cn);
+        if (fp > f) {
+            cnt[at]++;
+        } else if (fp < f) {
+            cnt[at + 1]++;
+        }
+        if (fn > f) {
+            cnt[at + 2]++;
+        } else if (fn < f) {
+            cnt[at + 3]++;
+        }
+    }
+
+    /**
+     * d0/d1 = R_M - S_M до/после переворота всех LSB, e0/e1 — то же для -M;
+     * 2(d1+d0)x² + (e0-d1-e1-3d0)x + d0-e0 = 0, берётся меньший по модулю корень, p = x / (x - 1/2).
+     */
+    private static double rsEstimate(double d0, double d1, double e0, double e1) {
+        double a = 2 * (d1 + d0);
+        double b = e0 - d1 - e1 - 3 * d0;
+        double c = d0 - e0;
+        double x;
+        if (Math.abs(a) < 1e-12) {
+            if (Math.abs(b) < 1e-12) {
+                return Double.NaN;
+            }
+            x = -c / b;
+        } else {
+            double disc = Math.sqrt(Math.max(0, b * b - 4 * a * c));
+            double x1 = (-b + disc) / (2 * a);
+            double x2 = (-b - disc) / (2 * a);
+            x = Math.abs(x1) < Math.abs(x2) ? x1 : x2;
+        }
+        double p = x / (x - 0.5);
+        return Math.min(1, Math.max(0, p));
+    }
+
+    /** Регуляризованная нижняя неполная гамма-функция P(a, x): ряд при x < a+1, иначе цепная дробь. */
+    static double regularizedGammaP(double a, double x) {
+        if (x <= 0) {
+            return 0;
+        }
+        double lnPrefix = a * Math.log(x) - x - lnGamma(a);
+        if (x < a + 1) {
+            double term = 1 / a;
+            double sum = term;
+            for (int k = 1; k < 1000; k++) {
+                term *= x / (a + k);
+                sum += term;
+                if (Math.abs(term) < Math.abs(sum) * 1e-15) {
+                    break;
+                }
+            }
+            return Math.min(1, sum * Math.exp(lnPrefix));
+        }
+        // Лентц для Q(a, x)
+        double tiny = 1e-300;
+        double b = x + 1 - a;
+        double c = 1 / tiny;
+        double d = 1 / b;
+        double f = d;
+        for (int k = 1; k < 1000; k++) {
+            double an = -k * (k - a);
+            b += 2;
+            d = an * d + b;
+            if (Math.abs(d) < tiny) {
+                d = tiny;
+            }
+            c = b + an / c;
+            if (Math.abs(c) < tiny) {
+                c = tiny;
+            }
+            d = 1 / d;
+            double delta = d * c;
+            f *= delta;
+            if (Math.abs(delta - 1) < 1e-15) {
+                break;
+            }
+        }
+        return Math.max(0, 1 - Math.exp(lnPrefix) * f);
+    }
+
+    /** ln Γ(x) по Ланцошу (g = 7, 9 коэффициентов), x > 0. */
+    private static double lnGamma(double x) {
+        double[] g = {0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+                -176.61502916214059, 12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6,
+                1.5056327351493116e-7};
+        if (x < 0.5) {
+            return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - lnGamma(1 - x);
+        }
+        x -= 1;
+        double s = g[0];
+        for (int i = 1; i < g.length; i++) {
+            s += g[i] / (x + i);
+        }
+        double t = x + 7.5;
+        return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(s);
+    }
+}
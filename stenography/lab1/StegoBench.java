@@ -0,0 +1,111 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+/**
+ * Микробенчмарк пропускной способности внедрения/извлечения (бит/с):
+ * старый путь через getSample/setSample против прямого доступа к byte[] растра,
+ * упаковка в несколько плоскостей (1-3) за один проход, LSB-согласование по ключевому обходу
+ * и матричное внедрение кодом Хэмминга.
+ * <p>
+ * Запуск из каталога lab1:
+ * {@code javac StegoBench.java && java StegoBench [..\container1\1.bmp] [итераций]}
+ */
+public final class StegoBench {
+
+    private static final String DEFAULT_IMAGE = "../container1/1.bmp";
+    private static final int WARMUP = 200;
+
+    private StegoBench() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String path = args.length > 0 ? args[0] : DEFAULT_IMAGE;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        BufferedImage img = ImageIO.read(new File(path));
+        if (img == null) {
+            throw new IOException("Cannot read image: " + path);
+        }
+        int bits = img.getWidth() * img.getHeight();
+        byte[] message = new byte[bits / 8];
+        new Random(1).nextBytes(message);
+        System.out.println("Image: " + path + " (" + img.getWidth() + "x" + img.getHeight()
+                + "), fast path: " + (StegoTool.grayBytes(img) != null));
+
+        PlaneCodec k1 = PlaneCodec.forPlane(1);
+        PlaneCodec k123 = new PlaneCodec(PlaneCodec.parsePlanes("1-3"));
+        int bits3 = (int) k123.capacityBits(img.getWidth() * img.getHeight());
+        byte[] message3 = new byte[bits3 / 8];
+        new Random(3).nextBytes(message3);
+
+        report("embed  raster", bits, iterations, () -> StegoTool.embedBitsRaster(img, message, 1));
+        report("embed  byte[]", bits, iterations, () -> StegoTool.embedBits(img, message, k1));
+        report("embed  1-3", bits3, iterations, () -> StegoTool.embedBits(img, message3, k123));
+        // LSB-согласование по ключевому обходу: та же ёмкость за вычетом 64 бит заголовка
+        int matchBits = LsbMatching.capacityBytes(bits) * 8;
+        byte[] matchMessage = Arrays.copyOf(message, matchBits / 8);
+        byte[] matchPx = StegoTool.grayBytes(img) != null ? StegoTool.grayBytes(img) : StegoTool.copySamples(img);
+        report("embed  match", matchBits, iterations, () -> StegoTool.embedMatching(img, matchMessage, "bench"));
+        report("extract match", matchBits, iterations, () -> {
+            try {
+                LsbMatching.extract(matchPx, bits, "bench");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        // матричное внедрение (1,7,3): 3 бита на блок из 7 пикселей, не больше одного изменения на блок
+        MatrixEmbedding hamming = new MatrixEmbedding(3);
+        byte[] matrixMessage = Arrays.copyOf(message, hamming.capacityBytes(bits));
+        int matrixBits = MatrixEmbedding.HEADER_BITS + matrixMessage.length * 8;
+        report("embed  hamming3", matrixBits, iterations, () -> hamming.embed(matchPx, bits, matrixMessage));
+        report("extract hamming3", matrixBits, iterations, () -> {
+            try {
+                MatrixEmbedding.extract(matchPx, bits);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        report("extract raster", bits, iterations, () -> StegoTool.extractBitsRaster(img, 1, bits));
+        report("extract byte[]", bits, iterations, () -> StegoTool.extractBits(img, k1, bits));
+        report("extract 1-3", bits3, iterations, () -> StegoTool.extractBits(img, k123, bits3));
+        report("plane  raster", bits, iterations, () -> StegoTool.planeImageRaster(img, 1));
+        report("plane  byte[]", bits, iterations, () -> StegoTool.planeImage(img, 1));
+
+        // плоскости по массиву: скалярно и (если подключён модуль инкубатора) векторно
+        byte[] src = StegoTool.grayBytes(img) != null ? StegoTool.grayBytes(img) : StegoTool.copySamples(img);
+        byte[] dst = new byte[bits];
+        byte[][] all = new byte[8][bits];
+        PlaneKernel scalar = PlaneKernel.scalar();
+        PlaneKernel best = PlaneKernel.get();
+        System.out.println("Plane kernel: " + best.name());
+        report("plane  scalar", bits, iterations, () -> scalar.plane(src, dst, bits, 3));
+        report("plane  " + (best == scalar ? "-" : "vector"), bits, iterations, () -> best.plane(src, dst, bits, 3));
+        report("planes x8 scalar", 8L * bits, iterations, () -> scalar.allPlanes(src, all, bits));
+        report("planes x8 " + (best == scalar ? "-" : "vec"), 8L * bits, iterations, () -> best.allPlanes(src, all, bits));
+        report("bitsets x8", 8L * bits, iterations,
+                () -> BitPlaneSet.decompose(src, img.getWidth(), img.getHeight()));
+    }
+
+    /** Прогрев, затем среднее по итерациям; результат печатается в бит/с. */
+    static void report(String name, long bitsPerOp, int iterations, Runnable op) {
+        report(name, bitsPerOp, "bit", WARMUP, iterations, op);
+    }
+
+    static void report(String name, long unitsPerOp, String unit, int warmup, int iterations, Runnable op) {
+        for (int i = 0; i < warmup; i++) {
+            op.run();
+        }
+        long t0 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            op.run();
+        }
+        double sec = (System.nanoTime() - t0) / 1e9;
+        double perSec = unitsPerOp * (double) iterations / sec;
+        System.out.println(String.format(Locale.ROOT, "%-16s %10.3f ms/op %14.3e %s/s",
+                name, 1000.0 * sec / iterations, perSec, unit));
+    }
+}
@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * Заголовок сообщения в контейнере: сигнатура, длина полезной нагрузки в байтах, маска плоскостей, CRC32,
+ * а также номер куска, число кусков и смещение куска в общей нагрузке — для сообщений, разложенных
+ * по нескольким контейнерам (одиночное сообщение: кусок 0 из 1, смещение 0; поток: число кусков 0).
+ * Пишется по одному биту на пиксель в младшую из выбранных плоскостей первых {@link #PIXELS} пикселей;
+ * нагрузка идёт следом, с пикселя {@link #PIXELS}, во все плоскости маски.
+ * При извлечении сигнатура ищется во всех восьми плоскостях первых 32 пикселей, поэтому ни длину,
+ * ни плоскости оператору вводить не нужно, а читается ровно заголовок и ровно нагрузка.
+ */
+public final class StegoHeader {
+
+    /** "STG1". */
+    static final int MAGIC = 0x53544731;
+    static final int BYTES = 4 + 4 + 1 + 4 + 4 + 4 + 8;
+    /** Пикселей под заголовок (1 бит на пиксель). */
+    static final int PIXELS = BYTES * 8;
+
+    final int length;
+    final int mask;
+    final int crc;
+    final int index;
+    /** Число кусков; 0 — неизвестно заранее (потоковое внедрение). */
+    final int count;
+    final long offset;
+
+    StegoHeader(int length, int mask, int crc) {
+        this(length, mask, crc, 0, 1, 0);
+    }
+
+    StegoHeader(int length, int mask, int crc, int index, int count, long offset) {
+        this.length = length;
+        this.mask = mask;
+        this.crc = crc;
+        this.index = index;
+        this.count = count;
+        this.offset = offset;
+    }
+
+    /** Максимальная длина нагрузки (байт), которая поместится в pixels пикселей вместе с заголовком. */
+    static int payloadCapacity(PlaneCodec codec, int pixels) {
+        if (pixels <= PIXELS) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, codec.capacityBits(pixels - PIXELS) / 8);
+    }
+
+    static int crc32(byte[] data, int off, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(data, off, len);
+        return (int) crc.getValue();
+    }
+
+    /** Записывает заголовок для нагрузки в пиксели [0, PIXELS). */
+    void write(byte[] px) {
+        PlaneCodec.Writer wr = PlaneCodec.forPlane(lowestPlane(mask)).writer(px, 0, PIXELS);
+        writeInt(wr, MAGIC);
+        writeInt(wr, length);
+        wr.write(mask);
+        writeInt(wr, crc);
+        writeInt(wr, index);
+        writeInt(wr, count);
+        writeInt(wr, (int) (offset >>> 32));
+        writeInt(wr, (int) offset);
+        wr.flush();
+    }
+
+    /** Ищет заголовок в плоскостях 1..8; IOException, если его нет или он не согласован с размером контейнера. */
+    static StegoHeader read(byte[] px, int pixels) throws IOException {
+        if (pixels <= PIXELS) {
+            throw new IOException("Image is too small to carry a stego header");
+        }
+        for (int k = 1; k <= 8; k++) {
+            PlaneCodec.Reader rd = PlaneCodec.forPlane(k).reader(px, 0);
+            if (readInt(rd) != MAGIC) {
+                continue;
+            }
+            int length = readInt(rd);
+            int mask = rd.read();
+            int crc = readInt(rd);
+            int index = readInt(rd);
+            int count = readInt(rd);
+            long offset = ((long) readInt(rd) << 32) | (readInt(rd) & 0xFFFFFFFFL);
+            if (mask == 0 || lowestPlane(mask) != k) {
+                throw new IOException("Corrupted stego header: plane mask " + mask + " in plane " + k);
+            }
+            int cap = payloadCapacity(new PlaneCodec(mask), pixels);
+            if (length < 0 || length > cap) {
+                throw new IOException("Corrupted stego header: length " + length + " exceeds capacity " + cap);
+            }
+            if (index < 0 || count < 0 || (count > 0 && index >= count) || offset < 0) {
+                throw new IOException("Corrupted stego header: chunk " + index + " of " + count + " at " + offset);
+            }
+            return new StegoHeader(length, mask, crc, index, count, offset);
+        }
+        throw new IOException("No stego header found (image has no embedded message or was written without header)");
+    }
+
+    static int lowestPlane(int mask) {
+        return Integer.numberOfTrailingZeros(mask) + 1;
+    }
+
+    private static void writeInt(PlaneCodec.Writer wr, int v) {
+        wr.write(v >>> 24);
+        wr.write(v >>> 16);
+        wr.write(v >>> 8);
+        wr.write(v);
+    }
+
+    private static int readInt(PlaneCodec.Reader rd) {
+        return (rd.read() << 24) | (rd.read() << 16) | (rd.read() << 8) | rd.read();
+    }
+}
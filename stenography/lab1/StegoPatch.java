@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Внедрение сообщения с заголовком прямо в байты BMP, без перекодирования всего изображения:
+ * контейнер копируется (или правится на месте), из него читаются только пиксели заголовка и нагрузки,
+ * а в файл позиционными записями FileChannel возвращаются лишь изменившиеся байты.
+ * Для короткого сообщения в большом изображении запись занимает O(нагрузки), а не O(изображения).
+ * Результат извлекается обычным {@link StegoTool#extractMessage}.
+ */
+final class StegoPatch {
+
+    /** Соседние изменённые байты строки с промежутком не длиннее этого пишутся одной записью. */
+    private static final int MERGE_GAP = 16;
+
+    /** Итог внедрения: байт сообщения, изменённых пикселей, позиционных записей и записанных байт. */
+    static final class Result {
+        final int written;
+        final int changedPixels;
+        final int writes;
+        final long bytesWritten;
+
+        Result(int written, int changedPixels, int writes, long bytesWritten) {
+            this.written = written;
+            this.changedPixels = changedPixels;
+            this.writes = writes;
+            this.bytesWritten = bytesWritten;
+        }
+    }
+
+    private StegoPatch() {
+    }
+
+    /**
+     * Внедряет message в копию container по пути out; если out — тот же файл, контейнер правится на месте.
+     * Подходит только несжатый 8-битный серый BMP (см. {@link BmpFile}).
+     */
+    static Result embed(Path container, Path out, byte[] message, PlaneCodec codec) throws IOException {
+        try (BmpFile bmp = BmpFile.open(container, false)) {
+            if (bmp == null) {
+                throw new IOException("Patching needs an uncompressed 8-bit gray BMP: " + container);
+            }
+            int pixels = bmp.width * bmp.height;
+            if (pixels <= StegoHeader.PIXELS) {
+                throw new IOException("Image is too small to carry a stego header");
+            }
+            int len = Math.min(message.length, StegoHeader.payloadCapacity(codec, pixels));
+            int touched = StegoHeader.PIXELS + (int) ((len * 8L + codec.bitsPerPixel - 1) / codec.bitsPerPixel);
+
+            byte[] px = new byte[touched];
+            bmp.readPixels(0, px, touched);
+            byte[] orig = px.clone();
+            new StegoHeader(len, codec.mask, StegoHeader.crc32(message, 0, len)).write(px);
+            codec.embed(px, StegoHeader.PIXELS, touched,
+                    len == message.length ? message : Arrays.copyOf(message, len));
+
+            if (!Files.exists(out) || !Files.isSameFile(container, out)) {
+                Files.copy(container, out, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (FileChannel ch = FileChannel.open(out, StandardOpenOption.WRITE)) {
+                return patch(ch, bmp, px, orig, len);
+            }
+        }
+    }
+
+    /** Пишет изменённые байты отрезками внутри строк (строки в файле не смежны из-за порядка и выравнивания). */
+    private static Result patch(FileChannel ch, BmpFile bmp, byte[] px, byte[] orig, int written)
+            throws IOException {
+        int w = bmp.width;
+        int changed = 0;
+        int writes = 0;
+        long bytes = 0;
+        int p = 0;
+        while (p < px.length) {
+            if (px[p] == orig[p]) {
+                p++;
+                continue;
+            }
+            int rowEnd = Math.min(px.length, (p / w + 1) * w);
+            int start = p;
+            int last = p;
+            for (int q = p; q < rowEnd && q - last <= MERGE_GAP; q++) {
+                if (px[q] != orig[q]) {
+                    last = q;
+                    changed++;
+                }
+            }
+            int n = last - start + 1;
+            ByteBuffer buf = ByteBuffer.wrap(px, start, n);
+            long pos = bmp.offset(start % w, start / w);
+            while (buf.hasRemaining()) {
+                pos += ch.write(buf, pos);
+            }
+            writes++;
+            bytes += n;
+            p = last + 1;
+        }
+        return new Result(written, changed, writes, bytes);
+    }
+}
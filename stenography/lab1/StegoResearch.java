@@ -23,7 +23,11 @@ import javax.imageio.ImageIO;
  * MSE, PSNR, SSIM, гистограммы и CSV для таблиц сравнения.
  * <p>
  * Запуск из каталога lab1:
- * {@code javac StegoResearch.java && java StegoResearch}
+ * {@code javac StegoResearch.java && java StegoResearch [research_config.txt] [потоков_вычислений]}
+ * <p>
+ * Файлы обрабатываются конвейером {@link StagePipeline}: чтение BMP и запись результатов на виртуальных
+ * потоках, вычисления (плоскости, энтропия, MSE/PSNR/SSIM, гистограммы) — на пуле по числу ядер.
+ * Строки CSV пишутся в том же порядке, что и при последовательной обработке.
  * <p>
  * По умолчанию читается {@code research_config.txt} в текущей директории.
  * Относительные пути в конфиге считаются от расположения самого конфига.
@@ -36,12 +40,12 @@ public final class StegoResearch {
     private static final String OUT_ROOT = "research_out";
 
     private static final double L = 255.0;
-    private static final double K1 = 0.01;
-    private static final double K2 = 0.03;
-    private static final double C1 = (K1 * L) * (K1 * L);
-    private static final double C2 = (K2 * L) * (K2 * L);
-    private static final int SSIM_WIN = 7;
-    private static final int SSIM_R = SSIM_WIN / 2;
+    /** Окно SSIM: -Dssim.win=7 (нечётное); -Dssim.sigma=1.5 включает гауссовы веса вместо равномерных. */
+    private static final int SSIM_WIN = Integer.getInteger("ssim.win", 7);
+    private static final double SSIM_SIGMA = Double.parseDouble(System.getProperty("ssim.sigma", "0"));
+    /** Виртуальных потоков на стадиях чтения и записи. */
+    private static final int IO_THREADS = 8;
+    private static final int QUEUE_CAPACITY = 8;
 
     public static void main(String[] args) throws IOException {
         Path cwd = Path.of("").toAbsolutePath();
@@ -71,6 +75,8 @@ public final class StegoResearch {
         Path msgPath = resolveConfigPath(configDir, effective.get(0));
         byte[] message = Files.readAllBytes(msgPath);
 
+        int computeThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
         Path outRoot = configDir.resolve(OUT_ROOT);
         Files.createDirectories(outRoot);
 
@@ -78,16 +84,10 @@ public final class StegoResearch {
         Path entropyCsv = outRoot.resolve("bitplane_entropy_all.csv");
         Path summaryCsv = outRoot.resolve("dataset_summary.csv");
 
-        try (BufferedWriter mw = Files.newBufferedWriter(metricsCsv, StandardCharsets.UTF_8);
-             BufferedWriter ew = Files.newBufferedWriter(entropyCsv, StandardCharsets.UTF_8);
-             BufferedWriter sw = Files.newBufferedWriter(summaryCsv, StandardCharsets.UTF_8)) {
-            mw.write("set;rep_image;k;MSE;PSNR_dB;SSIM");
-            mw.newLine();
-            ew.write("set;image;k;p0;p1;entropy_bits");
-            ew.newLine();
+        List<Job> jobs = new ArrayList<>();
+        try (BufferedWriter sw = Files.newBufferedWriter(summaryCsv, StandardCharsets.UTF_8)) {
             sw.write("set;directory;bmp_count;plane_files;rep_image");
             sw.newLine();
-
             for (int si = 1; si <= 3; si++) {
                 SetSpec spec = SetSpec.parse(effective.get(si), configDir);
                 int bmpCount = validateSetSpec(spec);
@@ -98,59 +98,154 @@ public final class StegoResearch {
 
                 Path setOut = outRoot.resolve(safeName(spec.name));
                 deleteTreeIfExists(setOut);
-                Path planesRoot = setOut.resolve("planes");
-                Path stegoRoot = setOut.resolve("stego");
-                Path histRoot = setOut.resolve("hist");
-                Path diffRoot = setOut.resolve("diff");
-                Files.createDirectories(planesRoot);
-                Files.createDirectories(stegoRoot);
-                Files.createDirectories(histRoot);
-                Files.createDirectories(diffRoot);
+                Files.createDirectories(setOut.resolve("planes"));
+                Files.createDirectories(setOut.resolve("stego"));
+                Files.createDirectories(setOut.resolve("hist"));
+                Files.createDirectories(setOut.resolve("diff"));
 
                 for (String planeFile : spec.planeFiles) {
-                    Path bmp = spec.dir.resolve(planeFile);
-                    BufferedImage gray = readGray(bmp);
-                    String base = baseName(planeFile);
-                    Path oneImgPlanes = planesRoot.resolve("img_" + safeName(base));
+                    Path oneImgPlanes = setOut.resolve("planes").resolve("img_" + safeName(baseName(planeFile)));
                     Files.createDirectories(oneImgPlanes);
-                    for (int k = 1; k <= 8; k++) {
-                        BufferedImage plane = buildPlaneVisualization(gray, k);
-                        Path outBmp = oneImgPlanes.resolve(String.format(Locale.ROOT, "plane_%02d.bmp", k));
-                        ImageIO.write(plane, "bmp", outBmp.toFile());
-
-                        BitEntropy be = bitEntropy(gray, k);
-                        ew.write(String.format(Locale.ROOT, "%s;%s;%d;%.6f;%.6f;%.6f",
-                                spec.name, planeFile, k, be.p0, be.p1, be.entropy));
-                        ew.newLine();
-                    }
+                    jobs.add(new Job(jobs.size(), spec, planeFile, false, oneImgPlanes));
                 }
+                jobs.add(new Job(jobs.size(), spec, spec.repFile, true, setOut));
+            }
+        }
+
+        // строки CSV складываются по номеру задания и пишутся после конвейера в исходном порядке
+        List<String>[] rows = newRowTable(jobs.size());
+        long t0 = System.nanoTime();
+        new StagePipeline<Job, Loaded, Output>(computeThreads, IO_THREADS, QUEUE_CAPACITY).run(jobs,
+                job -> new Loaded(job, readGray(job.spec.dir.resolve(job.file))),
+                loaded -> loaded.job.rep
+                        ? computeRep(loaded, message, rows)
+                        : computePlanes(loaded, rows),
+                out -> writeImage(out));
+        double sec = (System.nanoTime() - t0) / 1e9;
 
-                Path repBmp = spec.dir.resolve(spec.repFile);
-                BufferedImage original = readGray(repBmp);
-                saveHistogram(histogram(original), histRoot.resolve("rep_original_hist.png"), spec.name + " original");
-
-                for (int k = 1; k <= 3; k++) {
-                    BufferedImage stego = embedMessage(copyGray(original), message, k);
-                    String stegoName = String.format(Locale.ROOT, "rep_%s_k%d_stego.bmp", safeName(baseName(spec.repFile)), k);
-                    ImageIO.write(stego, "bmp", stegoRoot.resolve(stegoName).toFile());
-
-                    double mse = mse(original, stego);
-                    double psnr = psnr(mse);
-                    double ssim = ssimGray(original, stego);
-                    mw.write(String.format(Locale.ROOT, "%s;%s;%d;%.8f;%.6f;%.8f",
-                            spec.name, spec.repFile, k, mse, psnr, ssim));
-                    mw.newLine();
-
-                    saveHistogram(histogram(stego), histRoot.resolve("rep_k" + k + "_stego_hist.png"),
-                            spec.name + " k=" + k);
-                    saveAbsDiffScaled(original, stego, diffRoot.resolve("rep_k" + k + "_absdiff.png"));
+        try (BufferedWriter mw = Files.newBufferedWriter(metricsCsv, StandardCharsets.UTF_8);
+             BufferedWriter ew = Files.newBufferedWriter(entropyCsv, StandardCharsets.UTF_8)) {
+            mw.write("set;rep_image;k;MSE;PSNR_dB;SSIM");
+            mw.newLine();
+            ew.write("set;image;k;p0;p1;entropy_bits");
+            ew.newLine();
+            for (Job job : jobs) {
+                BufferedWriter w = job.rep ? mw : ew;
+                for (String row : rows[job.seq]) {
+                    w.write(row);
+                    w.newLine();
                 }
             }
         }
+        System.out.println(String.format(Locale.ROOT, "Конвейер: %d заданий, %d потоков вычислений, %.3f с",
+                jobs.size(), computeThreads, sec));
         System.out.println("Готово. Результаты в каталоге: " + outRoot.toAbsolutePath());
         System.out.println("Таблицы: metrics_all.csv, bitplane_entropy_all.csv, dataset_summary.csv");
     }
 
+    /** Визуализация 8 плоскостей и их энтропия для одного файла набора: одно разложение на битсеты. */
+    private static List<Output> computePlanes(Loaded loaded, List<String>[] rows) {
+        Job job = loaded.job;
+        BufferedImage gray = loaded.gray;
+        List<Output> outs = new ArrayList<>();
+        List<String> entropy = rows[job.seq];
+        BitPlaneSet bps = BitPlaneSet.decompose(pixels(gray), gray.getWidth(), gray.getHeight());
+        BufferedImage[] planes = buildAllPlaneVisualizations(bps);
+        for (int k = 1; k <= 8; k++) {
+            BufferedImage plane = planes[k - 1];
+            outs.add(new Output(plane, "bmp", job.outDir.resolve(String.format(Locale.ROOT, "plane_%02d.bmp", k))));
+
+            BitEntropy be = BitEntropy.of(bps.zeros(k), bps.n);
+            entropy.add(String.format(Locale.ROOT, "%s;%s;%d;%.6f;%.6f;%.6f",
+                    job.spec.name, job.file, k, be.p0, be.p1, be.entropy));
+        }
+        return outs;
+    }
+
+    /** Внедрение при k=1..3 в репрезентативный файл: метрики, гистограммы, карты разницы. */
+    private static List<Output> computeRep(Loaded loaded, byte[] message, List<String>[] rows) {
+        Job job = loaded.job;
+        SetSpec spec = job.spec;
+        BufferedImage original = loaded.gray;
+        Path histRoot = job.outDir.resolve("hist");
+        List<Output> outs = new ArrayList<>();
+        byte[] cover = pixels(original);
+        int n = original.getWidth() * original.getHeight();
+
+        List<String> metrics = rows[job.seq];
+        for (int k = 1; k <= 3; k++) {
+            BufferedImage stego = embedMessage(copyGray(original), message, k);
+            String stegoName = String.format(Locale.ROOT, "rep_%s_k%d_stego.bmp", safeName(baseName(spec.repFile)), k);
+            outs.add(new Output(stego, "bmp", job.outDir.resolve("stego").resolve(stegoName)));
+
+            // один проход: MSE, обе гистограммы, max|a-b|
+            FusedMetrics fm = FusedMetrics.compute(cover, pixels(stego), n);
+            if (k == 1) {
+                outs.add(new Output(renderHistogram(fm.histA, spec.name + " original"),
+                        "png", histRoot.resolve("rep_original_hist.png")));
+            }
+            double psnr = psnr(fm.mse);
+            double ssim = ssimGray(original, stego);
+            metrics.add(String.format(Locale.ROOT, "%s;%s;%d;%.8f;%.6f;%.8f",
+                    spec.name, spec.repFile, k, fm.mse, psnr, ssim));
+
+            outs.add(new Output(renderHistogram(fm.histB, spec.name + " k=" + k),
+                    "png", histRoot.resolve("rep_k" + k + "_stego_hist.png")));
+            outs.add(new Output(absDiffScaled(cover, pixels(stego), original.getWidth(), original.getHeight(),
+                    fm.maxAbsDiff), "png", job.outDir.resolve("diff").resolve("rep_k" + k + "_absdiff.png")));
+        }
+        return outs;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<String>[] newRowTable(int n) {
+        List<String>[] rows = new List[n];
+        for (int i = 0; i < n; i++) {
+            rows[i] = new ArrayList<>();
+        }
+        return rows;
+    }
+
+    /** Задание конвейера: один файл набора — либо 8 плоскостей, либо внедрение k=1..3. */
+    private static final class Job {
+        final int seq;
+        final SetSpec spec;
+        final String file;
+        final boolean rep;
+        final Path outDir;
+
+        Job(int seq, SetSpec spec, String file, boolean rep, Path outDir) {
+            this.seq = seq;
+            this.spec = spec;
+            this.file = file;
+            this.rep = rep;
+            this.outDir = outDir;
+        }
+    }
+
+    private static final class Loaded {
+        final Job job;
+        final BufferedImage gray;
+
+        Loaded(Job job, BufferedImage gray) {
+            this.job = job;
+            this.gray = gray;
+        }
+    }
+
+    /** Готовое изображение для стадии записи. */
+    private static final class Output {
+        final BufferedImage image;
+        final String format;
+        final Path path;
+
+        Output(BufferedImage image, String format, Path path) {
+            this.image = image;
+            this.format = format;
+            this.path = path;
+        }
+    }
+
     private static final class SetSpec {
         final String name;
         final Path dir;
@@ -246,8 +341,16 @@ public final class StegoResearch {
         }
     }
 
+    private static void writeImage(Output out) throws IOException {
+        if ("bmp".equals(out.format)) {
+            BmpFile.write(out.image, out.path);
+        } else {
+            ImageIO.write(out.image, out.format, out.path.toFile());
+        }
+    }
+
     private static BufferedImage readGray(Path path) throws IOException {
-        BufferedImage img = ImageIO.read(path.toFile());
+        BufferedImage img = BmpFile.read(path);
         if (img == null) {
             throw new IOException("Не удалось прочитать: " + path);
         }
@@ -298,19 +401,12 @@ public final class StegoResearch {
         return c;
     }
 
-    private static BufferedImage buildPlaneVisualization(BufferedImage gray, int k) {
-        int w = gray.getWidth();
-        int h = gray.getHeight();
-        int shift = k - 1;
-        BufferedImage res = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
-        WritableRaster src = gray.getRaster();
-        WritableRaster dst = res.getRaster();
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int v = src.getSample(x, y, 0) & 0xFF;
-                int bit = (v >> shift) & 1;
-                dst.setSample(x, y, 0, bit == 1 ? 255 : 0);
-            }
+    /** Восемь визуализаций из битсетов разложения; [k-1] — плоскость k. */
+    static BufferedImage[] buildAllPlaneVisualizations(BitPlaneSet bps) {
+        BufferedImage[] res = new BufferedImage[8];
+        for (int k = 1; k <= 8; k++) {
+            res[k - 1] = new BufferedImage(bps.w, bps.h, BufferedImage.TYPE_BYTE_GRAY);
+            bps.toMask(k, StegoTool.grayBytes(res[k - 1]));
         }
         return res;
     }
@@ -350,51 +446,23 @@ public final class StegoResearch {
             this.p1 = p1;
             this.entropy = entropy;
         }
-    }
 
-    private static BitEntropy bitEntropy(BufferedImage gray, int k) {
-        int w = gray.getWidth();
-        int h = gray.getHeight();
-        long n = (long) w * h;
-        WritableRaster r = gray.getRaster();
-        int shift = k - 1;
-        long c0 = 0;
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int v = r.getSample(x, y, 0) & 0xFF;
-                int bit = (v >> shift) & 1;
-                if (bit == 0) {
-                    c0++;
-                }
+        /** Доли нулей/единиц и энтропия плоскости по числу нулей c0 из n пикселей. */
+        static BitEntropy of(long c0, long n) {
+            double p0 = c0 / (double) n;
+            double p1 = 1.0 - p0;
+            double hBits = 0.0;
+            if (p0 > 0) {
+                hBits -= p0 * (Math.log(p0) / Math.log(2));
             }
-        }
-        double p0 = c0 / (double) n;
-        double p1 = 1.0 - p0;
-        double hBits = 0.0;
-        if (p0 > 0) {
-            hBits -= p0 * (Math.log(p0) / Math.log(2));
-        }
-        if (p1 > 0) {
-            hBits -= p1 * (Math.log(p1) / Math.log(2));
-        }
-        return new BitEntropy(p0, p1, hBits);
-    }
-
-    private static long[] histogram(BufferedImage gray) {
-        long[] h = new long[256];
-        WritableRaster r = gray.getRaster();
-        int w = gray.getWidth();
-        int height = gray.getHeight();
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < w; x++) {
-                int v = r.getSample(x, y, 0) & 0xFF;
-                h[v]++;
+            if (p1 > 0) {
+                hBits -= p1 * (Math.log(p1) / Math.log(2));
             }
+            return new BitEntropy(p0, p1, hBits);
         }
-        return h;
     }
 
-    private static void saveHistogram(long[] hist, Path outPng, String title) throws IOException {
+    private static BufferedImage renderHistogram(long[] hist, String title) {
         int maxW = 512;
         int barAreaH = 220;
         int top = 40;
@@ -419,55 +487,26 @@ public final class StegoResearch {
             g.fillRect(x, top + barAreaH - h, bw, h);
         }
         g.dispose();
-        ImageIO.write(img, "png", outPng.toFile());
+        return img;
     }
 
-    private static void saveAbsDiffScaled(BufferedImage a, BufferedImage b, Path outPng) throws IOException {
-        int w = a.getWidth();
-        int h = a.getHeight();
-        WritableRaster ra = a.getRaster();
-        WritableRaster rb = b.getRaster();
+    /** Карта |a-b|, растянутая на 0..255; maxDiff уже посчитан FusedMetrics, так что проход один. */
+    private static BufferedImage absDiffScaled(byte[] a, byte[] b, int w, int h, int maxDiff) {
         BufferedImage d = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
-        WritableRaster rd = d.getRaster();
-        int maxd = 1;
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int dv = Math.abs((ra.getSample(x, y, 0) & 0xFF) - (rb.getSample(x, y, 0) & 0xFF));
-                if (dv > maxd) {
-                    maxd = dv;
-                }
-            }
+        byte[] pd = StegoTool.grayBytes(d);
+        int maxd = Math.max(1, maxDiff);
+        for (int i = 0; i < w * h; i++) {
+            int dv = Math.abs((a[i] & 0xFF) - (b[i] & 0xFF));
+            pd[i] = (byte) Math.round(255.0 * dv / maxd);
         }
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int dv = Math.abs((ra.getSample(x, y, 0) & 0xFF) - (rb.getSample(x, y, 0) & 0xFF));
-                int s = (int) Math.round(255.0 * dv / maxd);
-                rd.setSample(x, y, 0, s);
-            }
-        }
-        ImageIO.write(d, "png", outPng.toFile());
+        return d;
     }
 
-    private static double mse(BufferedImage a, BufferedImage b) {
-        int w = a.getWidth();
-        int h = a.getHeight();
-        WritableRaster ra = a.getRaster();
-        WritableRaster rb = b.getRaster();
-        double sum = 0.0;
-        long n = 0;
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int va = ra.getSample(x, y, 0) & 0xFF;
-                int vb = rb.getSample(x, y, 0) & 0xFF;
-                int d = va - vb;
-                sum += (double) d * d;
-                n++;
-            }
-        }
-        return sum / n;
+    static double mse(BufferedImage a, BufferedImage b) {
+        return FusedMetrics.compute(pixels(a), pixels(b), a.getWidth() * a.getHeight()).mse;
     }
 
-    private static double psnr(double mse) {
+    static double psnr(double mse) {
         if (mse <= 0.0) {
             return 99.99;
         }
@@ -475,50 +514,22 @@ public final class StegoResearch {
     }
 
     /**
-     * SSIM для полутона: окно 7×7, равномерное усреднение (валидная область без полей).
+     * SSIM для полутона: окно SSIM_WIN×SSIM_WIN (по умолчанию 7×7), равномерное усреднение скользящими
+     * суммами или гауссовы веса при SSIM_SIGMA > 0; валидная область без полей.
      */
-    private static double ssimGray(BufferedImage a, BufferedImage b) {
-        int w = a.getWidth();
-        int h = a.getHeight();
-        WritableRaster ra = a.getRaster();
-        WritableRaster rb = b.getRaster();
-        double sum = 0.0;
-        long cnt = 0;
-        for (int y = SSIM_R; y < h - SSIM_R; y++) {
-            for (int x = SSIM_R; x < w - SSIM_R; x++) {
-                double mux = 0, muy = 0, muxx = 0, muyy = 0, mxy = 0;
-                int n = SSIM_WIN * SSIM_WIN;
-                for (int dy = -SSIM_R; dy <= SSIM_R; dy++) {
-                    for (int dx = -SSIM_R; dx <= SSIM_R; dx++) {
-                        double xv = ra.getSample(x + dx, y + dy, 0) & 0xFF;
-                        double yv = rb.getSample(x + dx, y + dy, 0) & 0xFF;
-                        mux += xv;
-                        muy += yv;
-                        muxx += xv * xv;
-                        muyy += yv * yv;
-                        mxy += xv * yv;
-                    }
-                }
-                mux /= n;
-                muy /= n;
-                double sx = muxx / n - mux * mux;
-                double sy = muyy / n - muy * muy;
-                double sxy = mxy / n - mux * muy;
-                if (sx < 0) {
-                    sx = 0;
-                }
-                if (sy < 0) {
-                    sy = 0;
-                }
-                double num = (2 * mux * muy + C1) * (2 * sxy + C2);
-                double den = (mux * mux + muy * muy + C1) * (sx + sy + C2);
-                if (den > 0) {
-                    sum += num / den;
-                    cnt++;
-                }
-            }
+    static double ssimGray(BufferedImage a, BufferedImage b) {
+        byte[] pa = pixels(a);
+        byte[] pb = pixels(b);
+        if (SSIM_SIGMA > 0) {
+            return Ssim.gaussian(pa, pb, a.getWidth(), a.getHeight(), SSIM_WIN, SSIM_SIGMA);
         }
-        return cnt == 0 ? Double.NaN : sum / cnt;
+        return Ssim.uniform(pa, pb, a.getWidth(), a.getHeight(), SSIM_WIN);
+    }
+
+    /** Пиксели полутонового изображения одним массивом y*w+x: без копирования, если растр это позволяет. */
+    static byte[] pixels(BufferedImage gray) {
+        byte[] px = StegoTool.grayBytes(gray);
+        return px != null ? px : StegoTool.copySamples(gray);
     }
 
     private static String baseName(String fileName) {
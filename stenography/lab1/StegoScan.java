@@ -0,0 +1,111 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Пакетный стегоанализ каталогов BMP ({@link Steganalysis}): файлы анализируются на пуле потоков,
+ * строки CSV пишутся сразу по мере готовности в порядке файлов. В работе держится не больше
+ * WINDOW_PER_THREAD задач на поток, так что память не зависит от числа изображений.
+ * Аргументы: [csv] [каталог ...]; по умолчанию steganalysis.csv и ../container1..3.
+ * Число потоков — -Dscan.threads (по умолчанию по числу ядер), сторона плитки SPA — -Dscan.tile (64).
+ */
+public final class StegoScan {
+
+    private static final int WINDOW_PER_THREAD = 4;
+    private static final int TILE = Integer.getInteger("scan.tile", 64);
+    private static final String HEADER = "set;file;width;height;chi_p;chi_rate;rs_rate;rm;sm;r_neg_m;s_neg_m;"
+            + "spa_rate;spa_prefix;spa_max_tile;error";
+
+    private StegoScan() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path csv = Paths.get(args.length > 0 ? args[0] : "steganalysis.csv");
+        List<Path> dirs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            dirs.add(Paths.get(args[i]));
+        }
+        if (dirs.isEmpty()) {
+            dirs.add(Paths.get("..", "container1"));
+            dirs.add(Paths.get("..", "container2"));
+            dirs.add(Paths.get("..", "container3"));
+        }
+        int threads = Integer.getInteger("scan.threads", StegoShards.defaultThreads());
+        long t0 = System.nanoTime();
+        int files = scan(dirs, csv, threads);
+        double sec = (System.nanoTime() - t0) / 1e9;
+        System.out.printf(Locale.ROOT, "Проанализировано %d изображений за %.2f с (%.1f изобр./с, потоков: %d)%n",
+                files, sec, files / sec, threads);
+        System.out.println("Результаты: " + csv.toAbsolutePath());
+    }
+
+    /** Анализирует все BMP каталогов и пишет CSV; возвращает число файлов. */
+    static int scan(List<Path> dirs, Path csv, int threads) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        int window = Math.max(1, threads) * WINDOW_PER_THREAD;
+        ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+        int files = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            out.write(HEADER);
+            out.newLine();
+            for (Path dir : dirs) {
+                String set = String.valueOf(dir.toAbsolutePath().normalize().getFileName());
+                for (Path file : StegoStream.listBmp(dir)) {
+                    pending.add(pool.submit(() -> row(set, file)));
+                    files++;
+                    if (pending.size() >= window) {
+                        writeRow(out, pending.poll());
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeRow(out, pending.poll());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return files;
+    }
+
+    private static void writeRow(BufferedWriter out, Future<String> row) throws IOException {
+        out.write(StegoShards.getChecked(row));
+        out.newLine();
+    }
+
+    /** Строка CSV для одного файла; ошибка чтения попадает в последний столбец, а не прерывает обход. */
+    private static String row(String set, Path file) {
+        String name = String.valueOf(file.getFileName());
+        BufferedImage img;
+        try {
+            img = StegoTool.readImageOrThrow(file.toString());
+        } catch (IOException | RuntimeException e) {
+            return set + ";" + name + ";;;;;;;;;;;;;" + String.valueOf(e.getMessage()).replace(';', ',');
+        }
+        byte[] px = StegoTool.grayBytes(img);
+        if (px == null) {
+            px = StegoTool.copySamples(img);
+        }
+        int w = img.getWidth();
+        int h = img.getHeight();
+        Steganalysis s = Steganalysis.analyze(px, w, h);
+        SpaTiles spa = SpaTiles.build(px, w, h, TILE);
+        double maxTile = 0;
+        for (double r : spa.tileRates()) {
+            maxTile = Math.max(maxTile, r);
+        }
+        return String.format(Locale.ROOT, "%s;%s;%d;%d;%.6f;%.2f;%.6f;%.6f;%.6f;%.6f;%.6f;%.6f;%.4f;%.6f;",
+                set, name, w, h, s.chiP, s.chiRate, s.rsRate, s.rm, s.sm, s.rnm, s.snm,
+                spa.globalRate(), spa.prefixRate(), maxTile);
+    }
+}
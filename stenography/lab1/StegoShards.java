@@ -0,0 +1,211 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Раскладка одной нагрузки по каталогу контейнеров: контейнеры берутся в порядке имён, кусок i
+ * получает следующие payloadCapacity байт файла и пишется со своим {@link StegoHeader}
+ * (номер, число кусков, смещение). Куски внедряются и извлекаются параллельно на пуле потоков:
+ * каждая задача читает/пишет свой диапазон файла позиционно через FileChannel, поэтому порядок
+ * завершения задач не важен и в памяти держится по одному контейнеру на поток.
+ */
+public final class StegoShards {
+
+    private StegoShards() {
+    }
+
+    public static int defaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Внедряет файл payload в контейнеры каталога; результаты — outDir/shard_00001.bmp, ... */
+    public static List<Path> embed(Path payload, Path containerDir, PlaneCodec codec, Path outDir, int threads)
+            throws IOException {
+        List<Path> containers = StegoStream.listBmp(containerDir);
+        long size = Files.size(payload);
+        List<Long> offsets = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        long offset = 0;
+        Iterator<Path> it = containers.iterator();
+        while (offset < size || offsets.isEmpty()) {
+            if (!it.hasNext()) {
+                throw new IOException("Not enough containers in " + containerDir + ": fit " + offset
+                        + " of " + size + " bytes");
+            }
+            int len = (int) Math.min(size - offset, StegoHeader.payloadCapacity(codec, pixelCount(it.next())));
+            offsets.add(offset);
+            lengths.add(len);
+            offset += len;
+        }
+        int count = offsets.size();
+        StegoStream.clearOutputs(outDir, "shard_*.bmp");
+        List<Path> outs = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try (FileChannel ch = FileChannel.open(payload, StandardOpenOption.READ)) {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                Path container = containers.get(i);
+                Path out = outDir.resolve(String.format(Locale.ROOT, "shard_%05d.bmp", i + 1));
+                outs.add(out);
+                int index = i;
+                long off = offsets.get(i);
+                int len = lengths.get(i);
+                tasks.add(pool.submit(() -> {
+                    embedShard(ch, container, out, codec, index, count, off, len);
+                    return null;
+                }));
+            }
+            await(tasks);
+        } finally {
+            pool.shutdownNow();
+        }
+        return outs;
+    }
+
+    /** Извлекает куски из стего каталога параллельно и собирает нагрузку в файл out; возвращает её размер. */
+    public static long extract(Path stegoDir, Path out, int threads) throws IOException {
+        List<Path> stegos = StegoStream.listBmp(stegoDir);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        List<StegoHeader> headers = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<Future<StegoHeader>> tasks = new ArrayList<>();
+            for (Path stego : stegos) {
+                tasks.add(pool.submit(() -> extractShard(ch, stego)));
+            }
+            for (Future<StegoHeader> f : tasks) {
+                headers.add(getChecked(f));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return checkComplete(headers, stegoDir);
+    }
+
+    private static void embedShard(FileChannel ch, Path container, Path out, PlaneCodec codec,
+                                   int index, int count, long offset, int len) throws IOException {
+        BufferedImage img = StegoTool.readImageOrThrow(container.toString());
+        byte[] chunk = new byte[len];
+        ByteBuffer buf = ByteBuffer.wrap(chunk);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, offset + buf.position()) < 0) {
+                throw new IOException("Payload file shrank while embedding");
+            }
+        }
+        int pixels = img.getWidth() * img.getHeight();
+        byte[] px = StegoTool.grayBytes(img);
+        boolean copied = px == null;
+        if (copied) {
+            px = StegoTool.copySamples(img);
+        }
+        new StegoHeader(len, codec.mask, StegoHeader.crc32(chunk, 0, len), index, count, offset).write(px);
+        codec.embed(px, StegoHeader.PIXELS, pixels, chunk);
+        if (copied) {
+            StegoTool.putSamples(img, px);
+        }
+        BmpFile.write(img, out);
+    }
+
+    private static StegoHeader extractShard(FileChannel ch, Path stego) throws IOException {
+        BufferedImage img = StegoTool.readImageOrThrow(stego.toString());
+        byte[] px = StegoTool.grayBytes(img);
+        if (px == null) {
+            px = StegoTool.copySamples(img);
+        }
+        StegoHeader header = StegoHeader.read(px, img.getWidth() * img.getHeight());
+        if (header.count == 0) {
+            throw new IOException("Stream chunk, not a shard (use streaming extraction): " + stego);
+        }
+        byte[] chunk = new PlaneCodec(header.mask).extract(px, StegoHeader.PIXELS, header.length * 8);
+        CRC32 crc = new CRC32();
+        crc.update(chunk);
+        if ((int) crc.getValue() != header.crc) {
+            throw new IOException("CRC32 mismatch in " + stego + ": shard is damaged");
+        }
+        ByteBuffer buf = ByteBuffer.wrap(chunk);
+        while (buf.hasRemaining()) {
+            ch.write(buf, header.offset + buf.position());
+        }
+        return header;
+    }
+
+    /** Проверяет, что куски 0..count-1 есть ровно по разу и стыкуются без дыр. */
+    private static long checkComplete(List<StegoHeader> headers, Path dir) throws IOException {
+        if (headers.isEmpty()) {
+            throw new IOException("No shards in " + dir);
+        }
+        int count = headers.get(0).count;
+        StegoHeader[] byIndex = new StegoHeader[count];
+        for (StegoHeader h : headers) {
+            if (h.count != count || byIndex[h.index] != null) {
+                throw new IOException("Shards in " + dir + " belong to different payloads");
+            }
+            byIndex[h.index] = h;
+        }
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            if (byIndex[i] == null) {
+                throw new IOException("Missing shard " + (i + 1) + " of " + count + " in " + dir);
+            }
+            if (byIndex[i].offset != total) {
+                throw new IOException("Shard " + (i + 1) + " does not continue the payload");
+            }
+            total += byIndex[i].length;
+        }
+        return total;
+    }
+
+    /** Размер изображения по заголовку файла, без декодирования растра. */
+    private static int pixelCount(Path bmp) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(bmp.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Cannot read image: " + bmp);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return reader.getWidth(0) * reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static void await(List<Future<?>> tasks) throws IOException {
+        for (Future<?> f : tasks) {
+            getChecked(f);
+        }
+    }
+
+    static <T> T getChecked(Future<T> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(String.valueOf(cause), cause);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Потоковое внедрение/извлечение: нагрузка читается из InputStream и раскладывается по
+ * последовательности контейнеров, каждый со своим {@link StegoHeader}; при извлечении куски
+ * пишутся прямо в OutputStream. В памяти одновременно только одно изображение и буферы потоков,
+ * поэтому объём нагрузки ограничен лишь суммарной ёмкостью контейнеров.
+ */
+public final class StegoStream {
+
+    private StegoStream() {
+    }
+
+    /**
+     * Внедряет поток в контейнеры по порядку, результаты — outDir/stego_00001.bmp, ...
+     * Возвращает пути записанных стего; IOException, если контейнеров не хватило.
+     */
+    public static List<Path> embed(InputStream in, List<Path> containers, PlaneCodec codec, Path outDir)
+            throws IOException {
+        clearOutputs(outDir, "stego_*.bmp");
+        InputStream src = in instanceof BufferedInputStream ? in : new BufferedInputStream(in);
+        List<Path> written = new ArrayList<>();
+        long offset = 0;
+        int next = src.read();
+        for (Path container : containers) {
+            if (next < 0 && !written.isEmpty()) {
+                break;
+            }
+            BufferedImage img = StegoTool.readImageOrThrow(container.toString());
+            int pixels = img.getWidth() * img.getHeight();
+            int cap = StegoHeader.payloadCapacity(codec, pixels);
+            if (cap == 0) {
+                throw new IOException("Container is too small: " + container);
+            }
+            byte[] px = StegoTool.grayBytes(img);
+            boolean copied = px == null;
+            if (copied) {
+                px = StegoTool.copySamples(img);
+            }
+            PlaneCodec.Writer wr = codec.writer(px, StegoHeader.PIXELS, pixels);
+            CRC32 crc = new CRC32();
+            int len = 0;
+            while (next >= 0 && len < cap) {
+                wr.write(next);
+                crc.update(next);
+                len++;
+                next = src.read();
+            }
+            wr.flush();
+            new StegoHeader(len, codec.mask, (int) crc.getValue(), written.size(), 0, offset).write(px);
+            offset += len;
+            if (copied) {
+                StegoTool.putSamples(img, px);
+            }
+            Path out = outDir.resolve(String.format(Locale.ROOT, "stego_%05d.bmp", written.size() + 1));
+            BmpFile.write(img, out);
+            written.add(out);
+        }
+        if (next >= 0) {
+            throw new IOException("Not enough containers: payload does not fit into " + containers.size() + " images");
+        }
+        return written;
+    }
+
+    /** Извлекает куски из стего по порядку и пишет их в out; возвращает общее число байт. */
+    public static long extract(List<Path> stegos, OutputStream out) throws IOException {
+        OutputStream dst = out instanceof BufferedOutputStream ? out : new BufferedOutputStream(out);
+        long total = 0;
+        int index = 0;
+        for (Path stego : stegos) {
+            BufferedImage img = StegoTool.readImageOrThrow(stego.toString());
+            byte[] px = StegoTool.grayBytes(img);
+            if (px == null) {
+                px = StegoTool.copySamples(img);
+            }
+            StegoHeader header = StegoHeader.read(px, img.getWidth() * img.getHeight());
+            if (header.index != index || header.offset != total) {
+                throw new IOException("Unexpected chunk in " + stego + ": chunk " + header.index
+                        + " at offset " + header.offset + ", expected chunk " + index + " at offset " + total);
+            }
+            index++;
+            PlaneCodec.Reader rd = new PlaneCodec(header.mask).reader(px, StegoHeader.PIXELS);
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < header.length; i++) {
+                int b = rd.read();
+                crc.update(b);
+                dst.write(b);
+            }
+            if ((int) crc.getValue() != header.crc) {
+                dst.flush();
+                throw new IOException("CRC32 mismatch in " + stego + ": embedded chunk is damaged");
+            }
+            total += header.length;
+        }
+        dst.flush();
+        return total;
+    }
+
+    /** Создаёт каталог результатов и удаляет из него файлы прошлого запуска, чтобы их не подхватило извлечение. */
+    static void clearOutputs(Path outDir, String glob) throws IOException {
+        Files.createDirectories(outDir);
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(outDir, glob)) {
+            for (Path p : ds) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    /** BMP каталога в детерминированном порядке (по имени файла). */
+    public static List<Path> listBmp(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            throw new IOException("Not a directory: " + dir);
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.bmp")) {
+            for (Path p : ds) {
+                if (Files.isRegularFile(p)) {
+                    files.add(p);
+                }
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+}
@@ -1,10 +1,18 @@
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
-import javax.imageio.ImageIO;
 
 public class StegoTool {
 
@@ -14,30 +22,95 @@ public class StegoTool {
             System.out.println("1 - Extract bit plane");
             System.out.println("2 - Embed message");
             System.out.println("3 - Extract message");
+            System.out.println("4 - Extract raw bits (image without header)");
+            System.out.println("5 - Embed large file across a directory of containers (streaming)");
+            System.out.println("6 - Extract large file from a directory of stego images (streaming)");
+            System.out.println("7 - Embed file as shards across a directory of containers (parallel)");
+            System.out.println("8 - Extract shards from a directory of stego images (parallel)");
+            System.out.println("9 - Embed message by patching only changed BMP bytes (copy or in place)");
+            System.out.println("10 - Embed message with LSB matching (+-1) along a keyed pixel walk");
+            System.out.println("11 - Extract LSB matching message (key)");
+            System.out.println("12 - Embed message with matrix embedding (Hamming code, p bits per 2^p-1 pixels)");
+            System.out.println("13 - Extract matrix-embedded message");
             System.out.print("Mode: ");
             int mode = sc.nextInt();
             sc.nextLine();
 
-            System.out.print("Path to BMP (e.g., ..\\container1\\1.bmp): ");
+            System.out.print(mode >= 5 && mode <= 8 ? "Directory with BMP (e.g., ..\\container1): "
+                    : "Path to BMP (e.g., ..\\container1\\1.bmp): ");
             String imgPath = sc.nextLine();
 
-            System.out.print("Bit number k (1-8, 1 is LSB): ");
-            int k = sc.nextInt();
-            sc.nextLine();
-
             switch (mode) {
                 case 1:
-                    getBitPlane(imgPath, k);
+                    System.out.print("Bit number k (1-8, 1 is LSB): ");
+                    getBitPlane(imgPath, PlaneCodec.singlePlane(PlaneCodec.parsePlanes(sc.nextLine())));
                     break;
                 case 2:
+                    System.out.print("Bit planes (k 1-8, 1 is LSB; a set is allowed, e.g. 1-3 or 1,2,4): ");
+                    int mask = PlaneCodec.parsePlanes(sc.nextLine());
                     System.out.print("Path to secret text file: ");
                     String txtPath = sc.nextLine();
-                    embedData(imgPath, txtPath, k);
+                    embedData(imgPath, txtPath, new PlaneCodec(mask));
                     break;
                 case 3:
+                    extractData(imgPath);
+                    break;
+                case 4:
+                    System.out.print("Bit planes (as used for embedding, e.g. 1 or 1-3): ");
+                    int rawMask = PlaneCodec.parsePlanes(sc.nextLine());
                     System.out.print("Number of bits to extract (e.g., 245760): ");
                     int bitLen = sc.nextInt();
-                    extractData(imgPath, k, bitLen);
+                    extractData(imgPath, new PlaneCodec(rawMask), bitLen);
+                    break;
+                case 5:
+                    System.out.print("Bit planes (e.g. 1 or 1-3): ");
+                    int streamMask = PlaneCodec.parsePlanes(sc.nextLine());
+                    System.out.print("Path to payload file: ");
+                    String payloadPath = sc.nextLine();
+                    embedStream(imgPath, payloadPath, new PlaneCodec(streamMask));
+                    break;
+                case 6:
+                    extractStream(imgPath);
+                    break;
+                case 7:
+                    System.out.print("Bit planes (e.g. 1 or 1-3): ");
+                    int shardMask = PlaneCodec.parsePlanes(sc.nextLine());
+                    System.out.print("Path to payload file: ");
+                    String shardPayload = sc.nextLine();
+                    embedShards(imgPath, shardPayload, new PlaneCodec(shardMask));
+                    break;
+                case 8:
+                    extractShards(imgPath);
+                    break;
+                case 9:
+                    System.out.print("Bit planes (e.g. 1 or 1-3): ");
+                    int patchMask = PlaneCodec.parsePlanes(sc.nextLine());
+                    System.out.print("Path to secret text file: ");
+                    String patchTxt = sc.nextLine();
+                    System.out.print("Output BMP (Enter = stego_result.bmp, the container path = patch in place): ");
+                    String patchOut = sc.nextLine().trim();
+                    embedPatch(imgPath, patchTxt, new PlaneCodec(patchMask),
+                            patchOut.isEmpty() ? "stego_result.bmp" : patchOut);
+                    break;
+                case 10:
+                    System.out.print("Path to secret text file: ");
+                    String matchTxt = sc.nextLine();
+                    System.out.print("Key: ");
+                    embedMatching(imgPath, matchTxt, sc.nextLine());
+                    break;
+                case 11:
+                    System.out.print("Key: ");
+                    extractMatching(imgPath, sc.nextLine());
+                    break;
+                case 12:
+                    System.out.print("Path to secret text file: ");
+                    String matrixTxt = sc.nextLine();
+                    System.out.print("Code parameter p (1-" + MatrixEmbedding.MAX_P + ", Enter = largest that fits): ");
+                    String pLine = sc.nextLine().trim();
+                    embedMatrix(imgPath, matrixTxt, pLine.isEmpty() ? 0 : Integer.parseInt(pLine));
+                    break;
+                case 13:
+                    extractMatrix(imgPath);
                     break;
                 default:
                     System.out.println("Invalid mode.");
@@ -47,8 +120,8 @@ public class StegoTool {
         }
     }
 
-    private static BufferedImage readImageOrThrow(String path) throws IOException {
-        BufferedImage img = ImageIO.read(new File(path));
+    static BufferedImage readImageOrThrow(String path) throws IOException {
+        BufferedImage img = BmpFile.read(Path.of(path));
         if (img == null) {
             throw new IOException("Cannot read image: " + path);
         }
@@ -61,10 +134,262 @@ public class StegoTool {
         }
     }
 
+    /**
+     * Прямой доступ к пикселям 8-битного одноканального растра (TYPE_BYTE_GRAY, палитровые BMP):
+     * возвращает сам массив DataBufferByte без копирования, индекс пикселя — y*w+x.
+     * null — растр другого вида, работаем через getSample/setSample.
+     */
+    static byte[] grayBytes(BufferedImage img) {
+        WritableRaster r = img.getRaster();
+        SampleModel sm = r.getSampleModel();
+        if (r.getNumBands() != 1 || r.getParent() != null
+                || r.getSampleModelTranslateX() != 0 || r.getSampleModelTranslateY() != 0
+                || !(r.getDataBuffer() instanceof DataBufferByte)
+                || !(sm instanceof ComponentSampleModel)) {
+            return null;
+        }
+        ComponentSampleModel csm = (ComponentSampleModel) sm;
+        DataBufferByte db = (DataBufferByte) r.getDataBuffer();
+        if (csm.getPixelStride() != 1 || csm.getScanlineStride() != img.getWidth()
+                || csm.getBandOffsets()[0] != 0 || db.getNumBanks() != 1 || db.getOffset() != 0
+                || sm.getSampleSize(0) != 8 || db.getSize() < img.getWidth() * img.getHeight()) {
+            return null;
+        }
+        return db.getData();
+    }
+
     // 1) Извлечение битовой плоскости
     public static void getBitPlane(String path, int k) throws IOException {
         checkK(k);
+        BufferedImage res = planeImage(readImageOrThrow(path), k);
+        BmpFile.write(res, Path.of("plane_" + k + ".bmp"));
+        System.out.println("Success: plane_" + k + ".bmp");
+    }
+
+    // 2) Внедрение данных (с заголовком: длина, плоскости, CRC32)
+    public static void embedData(String imgPath, String txtPath, int k) throws IOException {
+        embedData(imgPath, txtPath, PlaneCodec.forPlane(k));
+    }
+
+    public static void embedData(String imgPath, String txtPath, PlaneCodec codec) throws IOException {
+        BufferedImage img = readImageOrThrow(imgPath);
+        byte[] message = Files.readAllBytes(new File(txtPath).toPath());
+
+        int written = embedMessage(img, message, codec);
+        if (written < message.length) {
+            System.err.println("Warning: container full, message truncated.");
+        }
+        BmpFile.write(img, Path.of("stego_result.bmp"));
+        System.out.println("Success write " + written + " bytes (" + (written * 8L) + " bits) in planes "
+                + PlaneCodec.describe(codec.mask) + " of stego_result.bmp");
+    }
+
+    // 9) Внедрение правкой байт BMP: пишутся только изменённые пиксели
+    public static void embedPatch(String imgPath, String txtPath, PlaneCodec codec, String outPath)
+            throws IOException {
+        byte[] message = Files.readAllBytes(new File(txtPath).toPath());
+        StegoPatch.Result res = StegoPatch.embed(Path.of(imgPath), Path.of(outPath), message, codec);
+        if (res.written < message.length) {
+            System.err.println("Warning: container full, message truncated.");
+        }
+        System.out.println("Success write " + res.written + " bytes in planes " + PlaneCodec.describe(codec.mask)
+                + " of " + outPath + ": " + res.changedPixels + " pixels changed, " + res.bytesWritten
+                + " bytes patched in " + res.writes + " positional writes");
+    }
+
+    // 10) LSB-согласование по ключевому обходу пикселей
+    public static void embedMatching(String imgPath, String txtPath, String key) throws IOException {
+        BufferedImage img = readImageOrThrow(imgPath);
+        byte[] message = Files.readAllBytes(new File(txtPath).toPath());
+        int written = embedMatching(img, message, key);
+        if (written < message.length) {
+            System.err.println("Warning: container full, message truncated.");
+        }
+        BmpFile.write(img, Path.of("stego_result.bmp"));
+        System.out.println("Success write " + written + " bytes with LSB matching in stego_result.bmp");
+    }
+
+    // 11) Извлечение сообщения LSB-согласования
+    public static void extractMatching(String path, String key) throws IOException {
         BufferedImage img = readImageOrThrow(path);
+        byte[] px = grayBytes(img);
+        byte[] result = LsbMatching.extract(px != null ? px : copySamples(img), img.getWidth() * img.getHeight(), key);
+        Files.write(new File("extracted.txt").toPath(), result);
+        System.out.println("Message (" + result.length + " bytes, CRC32 ok) saved in extracted.txt");
+    }
+
+    // 12) Матричное внедрение кодом Хэмминга; p = 0 — наибольшее p, при котором сообщение помещается
+    public static void embedMatrix(String imgPath, String txtPath, int p) throws IOException {
+        BufferedImage img = readImageOrThrow(imgPath);
+        byte[] message = Files.readAllBytes(new File(txtPath).toPath());
+        int pixels = img.getWidth() * img.getHeight();
+        MatrixEmbedding code = new MatrixEmbedding(p == 0 ? MatrixEmbedding.choose(pixels, message.length) : p);
+
+        byte[] px = grayBytes(img);
+        boolean copied = px == null;
+        if (copied) {
+            px = copySamples(img);
+        }
+        byte[] cover = px.clone();
+        long t0 = System.nanoTime();
+        MatrixEmbedding.Stats st = code.embed(px, pixels, message);
+        double sec = (System.nanoTime() - t0) / 1e9;
+        if (copied) {
+            putSamples(img, px);
+        }
+        if (st.written < message.length) {
+            System.err.println("Warning: container full, message truncated.");
+        }
+        BmpFile.write(img, Path.of("stego_result.bmp"));
+        long bits = (MatrixEmbedding.HEADER_BITS + st.written * 8L);
+        System.out.println(String.format(Locale.ROOT,
+                "Success write %d bytes with Hamming (1,%d,%d) in stego_result.bmp: %d of %d used pixels changed "
+                        + "(%.4f per pixel, %.2f bits per change; LSB replacement ~0.5 per pixel, 2 bits per change), "
+                        + "PSNR %.2f dB, %.3e bit/s",
+                st.written, code.n, code.p, st.changed, st.usedPixels, st.changed / (double) Math.max(1, st.usedPixels),
+                bits / (double) Math.max(1, st.changed), StegoResearch.psnr(FusedMetrics.compute(cover, px, pixels).mse), bits / sec));
+    }
+
+    // 13) Извлечение матрично внедрённого сообщения
+    public static void extractMatrix(String path) throws IOException {
+        BufferedImage img = readImageOrThrow(path);
+        byte[] px = grayBytes(img);
+        byte[] result = MatrixEmbedding.extract(px != null ? px : copySamples(img), img.getWidth() * img.getHeight());
+        Files.write(new File("extracted.txt").toPath(), result);
+        System.out.println("Message (" + result.length + " bytes, CRC32 ok) saved in extracted.txt");
+    }
+
+    static int embedMatching(BufferedImage img, byte[] message, String key) {
+        byte[] px = grayBytes(img);
+        boolean copied = px == null;
+        if (copied) {
+            px = copySamples(img);
+        }
+        int written = LsbMatching.embed(px, img.getWidth() * img.getHeight(), message, key);
+        if (copied) {
+            putSamples(img, px);
+        }
+        return written;
+    }
+
+    // 3) Извлечение сообщения по заголовку
+    public static void extractData(String path) throws IOException {
+        byte[] result = extractMessage(readImageOrThrow(path));
+        Files.write(new File("extracted.txt").toPath(), result);
+        System.out.println("Message (" + result.length + " bytes, CRC32 ok) saved in extracted.txt");
+    }
+
+    // 4) Извлечение заданного числа бит (контейнеры без заголовка)
+    public static void extractData(String path, int k, int bitLen) throws IOException {
+        extractData(path, PlaneCodec.forPlane(k), bitLen);
+    }
+
+    public static void extractData(String path, PlaneCodec codec, int bitLen) throws IOException {
+        BufferedImage img = readImageOrThrow(path);
+        int w = img.getWidth();
+        int h = img.getHeight();
+        if (bitLen < 0) {
+            throw new IllegalArgumentException("bitLen must be non-negative");
+        }
+        long capacity = codec.capacityBits(w * h);
+        if (bitLen > capacity) {
+            throw new IOException("bitLen exceeds image capacity (" + capacity + " bits)");
+        }
+        byte[] result = extractBits(img, codec, bitLen);
+        Files.write(new File("extracted.txt").toPath(), result);
+        System.out.println("Message saved in extracted.txt");
+    }
+
+    // 5) Потоковое внедрение большого файла в каталог контейнеров
+    public static void embedStream(String dirPath, String payloadPath, PlaneCodec codec) throws IOException {
+        List<Path> containers = StegoStream.listBmp(Path.of(dirPath));
+        List<Path> written;
+        try (InputStream in = Files.newInputStream(Path.of(payloadPath))) {
+            written = StegoStream.embed(in, containers, codec, Path.of("stego_stream"));
+        }
+        System.out.println("Success: payload spread over " + written.size() + " images in stego_stream");
+    }
+
+    // 6) Потоковое извлечение из каталога стего
+    public static void extractStream(String dirPath) throws IOException {
+        long total;
+        try (OutputStream out = Files.newOutputStream(Path.of("extracted.bin"))) {
+            total = StegoStream.extract(StegoStream.listBmp(Path.of(dirPath)), out);
+        }
+        System.out.println("Payload (" + total + " bytes) saved in extracted.bin");
+    }
+
+    // 7) Параллельная раскладка файла по каталогу контейнеров
+    public static void embedShards(String dirPath, String payloadPath, PlaneCodec codec) throws IOException {
+        int threads = StegoShards.defaultThreads();
+        long t0 = System.nanoTime();
+        List<Path> written = StegoShards.embed(Path.of(payloadPath), Path.of(dirPath), codec,
+                Path.of("stego_shards"), threads);
+        double sec = (System.nanoTime() - t0) / 1e9;
+        System.out.println("Success: " + written.size() + " shards in stego_shards (" + threads + " threads, "
+                + String.format("%.3f", sec) + " s)");
+    }
+
+    // 8) Параллельная сборка файла из кусков
+    public static void extractShards(String dirPath) throws IOException {
+        int threads = StegoShards.defaultThreads();
+        long t0 = System.nanoTime();
+        long total = StegoShards.extract(Path.of(dirPath), Path.of("extracted.bin"), threads);
+        double sec = (System.nanoTime() - t0) / 1e9;
+        System.out.println("Payload (" + total + " bytes) saved in extracted.bin (" + threads + " threads, "
+                + String.format("%.3f", sec) + " s)");
+    }
+
+    /**
+     * Заголовок {@link StegoHeader} и следом нагрузка. Возвращает число внедрённых байт
+     * (меньше длины сообщения, если не хватило ёмкости: тогда внедряется префикс целыми байтами).
+     */
+    static int embedMessage(BufferedImage img, byte[] message, PlaneCodec codec) throws IOException {
+        int pixels = img.getWidth() * img.getHeight();
+        if (pixels <= StegoHeader.PIXELS) {
+            throw new IOException("Image is too small to carry a stego header");
+        }
+        int len = Math.min(message.length, StegoHeader.payloadCapacity(codec, pixels));
+        byte[] px = grayBytes(img);
+        boolean copied = px == null;
+        if (copied) {
+            px = copySamples(img);
+        }
+        new StegoHeader(len, codec.mask, StegoHeader.crc32(message, 0, len)).write(px);
+        codec.embed(px, StegoHeader.PIXELS, pixels,
+                len == message.length ? message : Arrays.copyOf(message, len));
+        if (copied) {
+            putSamples(img, px);
+        }
+        return len;
+    }
+
+    /** Читает заголовок, затем ровно столько пикселей, сколько занимает нагрузка; проверяет CRC32. */
+    static byte[] extractMessage(BufferedImage img) throws IOException {
+        byte[] px = grayBytes(img);
+        if (px == null) {
+            px = copySamples(img);
+        }
+        StegoHeader header = StegoHeader.read(px, img.getWidth() * img.getHeight());
+        byte[] payload = new PlaneCodec(header.mask).extract(px, StegoHeader.PIXELS, header.length * 8);
+        if (StegoHeader.crc32(payload, 0, payload.length) != header.crc) {
+            throw new IOException("CRC32 mismatch: embedded message is damaged");
+        }
+        return payload;
+    }
+
+    /** Плоскость k как ч/б изображение (бит 1 — 255, бит 0 — 0). */
+    static BufferedImage planeImage(BufferedImage img, int k) {
+        byte[] src = grayBytes(img);
+        if (src == null) {
+            return planeImageRaster(img, k);
+        }
+        BufferedImage res = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        PlaneKernel.get().plane(src, grayBytes(res), img.getWidth() * img.getHeight(), k);
+        return res;
+    }
+
+    static BufferedImage planeImageRaster(BufferedImage img, int k) {
         int w = img.getWidth();
         int h = img.getHeight();
         int shift = k - 1;
@@ -80,16 +405,29 @@ public class StegoTool {
                 dst.setSample(x, y, 0, bit == 1 ? 255 : 0);
             }
         }
-        ImageIO.write(res, "bmp", new File("plane_" + k + ".bmp"));
-        System.out.println("Success: plane_" + k + ".bmp");
+        return res;
     }
 
-    // 2) Внедрение данных
-    public static void embedData(String imgPath, String txtPath, int k) throws IOException {
-        checkK(k);
-        BufferedImage img = readImageOrThrow(imgPath);
-        byte[] message = Files.readAllBytes(new File(txtPath).toPath());
+    /**
+     * Записывает биты сообщения (старший бит байта первым) в плоскости маски codec, порциями
+     * по bitCount(mask) бит на пиксель в порядке строк. Возвращает число записанных бит
+     * (меньше 8*len, если не хватило ёмкости).
+     */
+    static int embedBits(BufferedImage img, byte[] message, PlaneCodec codec) {
+        byte[] px = grayBytes(img);
+        boolean copied = px == null;
+        if (copied) {
+            px = copySamples(img);
+        }
+        int total = codec.embed(px, 0, img.getWidth() * img.getHeight(), message);
+        if (copied) {
+            putSamples(img, px);
+        }
+        return total;
+    }
 
+    /** Исходный путь через getSample/setSample для одной плоскости; оставлен как эталон для StegoBench. */
+    static int embedBitsRaster(BufferedImage img, byte[] message, int k) {
         int w = img.getWidth();
         int h = img.getHeight();
         int capacity = w * h;
@@ -102,7 +440,6 @@ public class StegoTool {
         for (byte b : message) {
             for (int i = 7; i >= 0; i--) {
                 if (pixelIdx >= capacity) {
-                    System.err.println("Warning: container full, message truncated.");
                     break outer;
                 }
                 int x = pixelIdx % w;
@@ -115,23 +452,51 @@ public class StegoTool {
                 totalBits++;
             }
         }
-        ImageIO.write(img, "bmp", new File("stego_result.bmp"));
-        System.out.println("Success write " + totalBits + " bits (" + (totalBits / 8) + " full bytes) in stego_result.bmp");
+        return totalBits;
     }
 
-    // 3) Извлечение сообщения
-    public static void extractData(String path, int k, int bitLen) throws IOException {
-        checkK(k);
-        BufferedImage img = readImageOrThrow(path);
+    /** Читает bitLen бит из плоскостей маски codec в порядке строк; bitLen не больше ёмкости. */
+    static byte[] extractBits(BufferedImage img, PlaneCodec codec, int bitLen) {
+        byte[] px = grayBytes(img);
+        if (px == null) {
+            px = copySamples(img);
+        }
+        return codec.extract(px, 0, bitLen);
+    }
+
+    /** Канал 0 растра нестандартного вида одним массивом (копия), индекс y*w+x. */
+    static byte[] copySamples(BufferedImage img) {
         int w = img.getWidth();
         int h = img.getHeight();
-        if (bitLen < 0) {
-            throw new IllegalArgumentException("bitLen must be non-negative");
+        int[] row = new int[w];
+        byte[] px = new byte[w * h];
+        WritableRaster r = img.getRaster();
+        for (int y = 0; y < h; y++) {
+            r.getSamples(0, y, w, 1, 0, row);
+            for (int x = 0; x < w; x++) {
+                px[y * w + x] = (byte) row[x];
+            }
         }
-        if (bitLen > (long) w * h) {
-            throw new IOException("bitLen exceeds image capacity (" + ((long) w * h) + " bits)");
+        return px;
+    }
+
+    static void putSamples(BufferedImage img, byte[] px) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        int[] row = new int[w];
+        WritableRaster r = img.getRaster();
+        for (int y = 0; y < h; y++) {
+            r.getSamples(0, y, w, 1, 0, row);
+            for (int x = 0; x < w; x++) {
+                row[x] = (row[x] & ~0xFF) | (px[y * w + x] & 0xFF);
+            }
+            r.setSamples(0, y, w, 1, 0, row);
         }
+    }
 
+    /** Исходное поплоскостное извлечение через getSample; эталон для StegoBench. */
+    static byte[] extractBitsRaster(BufferedImage img, int k, int bitLen) {
+        int w = img.getWidth();
         WritableRaster r = img.getRaster();
         byte[] result = new byte[(bitLen + 7) / 8];
 
@@ -143,7 +508,6 @@ public class StegoTool {
             int bit = (v >> shift) & 1;
             result[i / 8] |= (bit << (7 - (i % 8)));
         }
-        Files.write(new File("extracted.txt").toPath(), result);
-        System.out.println("Message saved in extracted.txt");
+        return result;
     }
 }
@@ -0,0 +1,56 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Векторная реализация {@link PlaneKernel}: за итерацию обрабатывается SPECIES_PREFERRED.length() пикселей
+ * (сдвиг, and 1, смена знака даёт 0x00/0xFF), хвост — скалярно.
+ * <p>
+ * Собирается отдельно, после основных классов, из каталога lab1:
+ * {@code javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorPlaneKernel.java}
+ * и включается запуском {@code java --add-modules jdk.incubator.vector ...}.
+ */
+public final class VectorPlaneKernel implements PlaneKernel {
+
+    private static final VectorSpecies<Byte> S = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    public void plane(byte[] src, byte[] dst, int n, int k) {
+        int shift = k - 1;
+        int bound = S.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += S.length()) {
+            ByteVector.fromArray(S, src, i)
+                    .lanewise(VectorOperators.LSHR, shift)
+                    .and((byte) 1)
+                    .neg()
+                    .intoArray(dst, i);
+        }
+        for (; i < n; i++) {
+            dst[i] = (byte) -((src[i] >> shift) & 1);
+        }
+    }
+
+    @Override
+    public void allPlanes(byte[] src, byte[][] dst, int n) {
+        int bound = S.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += S.length()) {
+            ByteVector v = ByteVector.fromArray(S, src, i);
+            for (int k = 0; k < 8; k++) {
+                v.lanewise(VectorOperators.LSHR, k).and((byte) 1).neg().intoArray(dst[k], i);
+            }
+        }
+        for (; i < n; i++) {
+            int v = src[i];
+            for (int k = 0; k < 8; k++) {
+                dst[k][i] = (byte) -((v >> k) & 1);
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return "vector " + S;
+    }
+}
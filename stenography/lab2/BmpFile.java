@@ -0,0 +1,244 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.imageio.ImageIO;
+
+/**
+ * Несжатый 8-битный BMP с серой палитрой (палитра i -> (i,i,i), как у контейнеров container1/2/3),
+ * без ImageIO. Пиксель (x, y) лежит в файле по смещению {@link #offset}: учитываются порядок строк
+ * снизу вверх и выравнивание строк до 4 байт. {@link #open} отображает файл в память через FileChannel.map
+ * для выборочного доступа и правки на месте: в режиме записи изменения get/set попадают в файл,
+ * затрагиваются только изменённые байты. Чтение и запись файла целиком ({@link #readGray}, {@link #write})
+ * идут через FileChannel.read/write с обычным буфером: отображение там ничего не экономит, а живое
+ * отображение в Windows мешает потом перезаписать или удалить тот же файл.
+ * Файлы другого вида (другая глубина, сжатие, цветная палитра) не открываются — для них остаётся ImageIO.
+ */
+public final class BmpFile implements Closeable {
+
+    private static final int FILE_HEADER = 14;
+    private static final int INFO_HEADER = 40;
+    private static final int PALETTE = 256 * 4;
+
+    final int width;
+    final int height;
+    final int stride;
+    final int dataOffset;
+    final boolean bottomUp;
+    /** null, если файл прочитан в память целиком. */
+    private final FileChannel ch;
+    private final ByteBuffer map;
+
+    private BmpFile(FileChannel ch, ByteBuffer map, int width, int height, int stride, int dataOffset,
+                    boolean bottomUp) {
+        this.ch = ch;
+        this.map = map;
+        this.width = width;
+        this.height = height;
+        this.stride = stride;
+        this.dataOffset = dataOffset;
+        this.bottomUp = bottomUp;
+    }
+
+    /**
+     * Открывает файл; null — это не несжатый 8-битный серый BMP (тогда нужен ImageIO).
+     * writable — изменения пикселей пишутся прямо в файл.
+     */
+    public static BmpFile open(Path path, boolean writable) throws IOException {
+        FileChannel ch = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = ch.size();
+            if (size < FILE_HEADER + INFO_HEADER || size > Integer.MAX_VALUE) {
+                ch.close();
+                return null;
+            }
+            MappedByteBuffer map = ch.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                    0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            BmpFile bmp = parse(ch, map, (int) size);
+            if (bmp == null) {
+                ch.close();
+            }
+            return bmp;
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /** Весь файл в буфер в куче; null — не несжатый 8-битный серый BMP. */
+    private static BmpFile load(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < FILE_HEADER + INFO_HEADER || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf) < 0) {
+                    throw new IOException("Unexpected end of file: " + path);
+                }
+            }
+            return parse(null, buf, (int) size);
+        }
+    }
+
+    private static BmpFile parse(FileChannel ch, ByteBuffer map, int size) {
+        if (map.get(0) != 'B' || map.get(1) != 'M') {
+            return null;
+        }
+        int dataOffset = map.getInt(10);
+        int infoSize = map.getInt(14);
+        int w = map.getInt(18);
+        int rawH = map.getInt(22);
+        int bpp = map.getShort(28) & 0xFFFF;
+        int compression = map.getInt(30);
+        int colors = map.getInt(46);
+        if (infoSize < INFO_HEADER || bpp != 8 || compression != 0 || w <= 0 || rawH == 0 || rawH == Integer.MIN_VALUE) {
+            return null;
+        }
+        if (colors == 0) {
+            colors = 256;
+        }
+        int paletteAt = FILE_HEADER + infoSize;
+        if (colors != 256 || paletteAt + PALETTE > dataOffset) {
+            return null;
+        }
+        for (int i = 0; i < 256; i++) {
+            int p = paletteAt + i * 4;
+            if ((map.get(p) & 0xFF) != i || (map.get(p + 1) & 0xFF) != i || (map.get(p + 2) & 0xFF) != i) {
+                return null;
+            }
+        }
+        int h = Math.abs(rawH);
+        int stride = (w + 3) & ~3;
+        if ((long) dataOffset + (long) stride * h > size) {
+            return null;
+        }
+        return new BmpFile(ch, map, w, h, stride, dataOffset, rawH > 0);
+    }
+
+    /** Смещение пикселя (x, y) в файле. */
+    public int offset(int x, int y) {
+        return dataOffset + (bottomUp ? height - 1 - y : y) * stride + x;
+    }
+
+    public int get(int x, int y) {
+        return map.get(offset(x, y)) & 0xFF;
+    }
+
+    public void set(int x, int y, int v) {
+        map.put(offset(x, y), (byte) v);
+    }
+
+    /** Все пиксели в dst по индексу y*w+x (одно копирование строки за раз). */
+    public void readPixels(byte[] dst) {
+        for (int y = 0; y < height; y++) {
+            map.get(offset(0, y), dst, y * width, width);
+        }
+    }
+
+    /** len пикселей, начиная с пикселя from в порядке y*w+x, — только строки, в которые они попадают. */
+    public void readPixels(int from, byte[] dst, int len) {
+        int end = from + len;
+        for (int p = from; p < end; ) {
+            int y = p / width;
+            int x = p - y * width;
+            int n = Math.min(width - x, end - p);
+            map.get(offset(x, y), dst, p - from, n);
+            p += n;
+        }
+    }
+
+    /** Записывает пиксели y*w+x в файл (только для открытых на запись). */
+    public void writePixels(byte[] src) {
+        for (int y = 0; y < height; y++) {
+            map.put(offset(0, y), src, y * width, width);
+        }
+    }
+
+    public BufferedImage toImage() {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        readPixels(((DataBufferByte) img.getRaster().getDataBuffer()).getData());
+        return img;
+    }
+
+    /** Сбрасывает изменённые страницы на диск (только для отображённых файлов). */
+    public void force() {
+        if (map instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) map).force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ch != null) {
+            ch.close();
+        }
+    }
+
+    /** TYPE_BYTE_GRAY из файла, прочитанного одним буфером; null — файл не 8-битный серый BMP. */
+    public static BufferedImage readGray(Path path) throws IOException {
+        BmpFile bmp = load(path);
+        return bmp == null ? null : bmp.toImage();
+    }
+
+    /** Чтение 8-битного серого BMP напрямую, а прочих форматов — через ImageIO; null, если формат не распознан. */
+    public static BufferedImage read(Path path) throws IOException {
+        BufferedImage img = readGray(path);
+        return img != null ? img : ImageIO.read(path.toFile());
+    }
+
+    /**
+     * Пишет TYPE_BYTE_GRAY как 8-битный серый BMP (снизу вверх, заголовок как у ImageIO): файл собирается
+     * в буфере и пишется одной последовательностью FileChannel.write; остальные изображения — через ImageIO.
+     */
+    public static void write(BufferedImage img, Path path) throws IOException {
+        if (img.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+            ImageIO.write(img, "bmp", path.toFile());
+            return;
+        }
+        int w = img.getWidth();
+        int h = img.getHeight();
+        int stride = (w + 3) & ~3;
+        int dataOffset = FILE_HEADER + INFO_HEADER + PALETTE;
+        long size = dataOffset + (long) stride * h;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Image is too large for BMP: " + w + "x" + h);
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put(0, (byte) 'B').put(1, (byte) 'M');
+        buf.putInt(2, (int) size);
+        buf.putInt(10, dataOffset);
+        buf.putInt(14, INFO_HEADER);
+        buf.putInt(18, w);
+        buf.putInt(22, h);
+        buf.putShort(26, (short) 1);
+        buf.putShort(28, (short) 8);
+        buf.putInt(34, stride * h);
+        buf.putInt(50, 256);
+        for (int i = 0; i < 256; i++) {
+            int p = FILE_HEADER + INFO_HEADER + i * 4;
+            buf.put(p, (byte) i).put(p + 1, (byte) i).put(p + 2, (byte) i).put(p + 3, (byte) 0xFF);
+        }
+        byte[] row = new byte[w];
+        for (int y = 0; y < h; y++) {
+            img.getRaster().getDataElements(0, y, w, 1, row);
+            buf.put(dataOffset + (h - 1 - y) * stride, row, 0, w);
+        }
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * ЦВЗ в области блочного ДКП 8×8 (как у JPEG), поэтому знак переживает JPEG-пережатие, в отличие
+ * от методов в младшей плоскости. В каждом блоке биты несут {@value #BAND_SIZE} среднечастотных
+ * коэффициентов (зигзаг 6–13), бит задаётся квантованием с индексной модуляцией (QIM): коэффициент
+ * округляется к ближайшему узлу решётки с шагом step/2 и нужной чётностью номера узла; решётка
+ * сдвинута на псевдослучайную величину от ключа. Извлечение слепое — чётность ближайшего узла.
+ * <p>
+ * Преобразование — целочисленный алгоритм Араи–Агуи–Накаджимы (AAN, как jfdctfst/jidctfst
+ * в libjpeg: 5 умножений на строку, масштаб коэффициентов вынесен в {@link #SCALE}), константы
+ * с 13 дробными битами. После обратного ДКП пиксели округляются и обрезаются до 0..255; если
+ * обрезка (тёмные или пересвеченные блоки) увела коэффициент от узла дальше чем на step·{@link #MARGIN},
+ * блок квантуется повторно к тем же узлам, до {@value #MAX_PASSES} проходов: одной верной чётности
+ * мало, у границы решения бит теряется от слабого шума. Блоки независимы и обрабатываются строками
+ * блоков в ForkJoinPool.
+ */
+public final class DctWatermark {
+
+    public static final int BLOCK = 8;
+    public static final int BAND_SIZE = 8;
+    public static final double DEFAULT_STEP = 24.0;
+    static final int MAX_PASSES = 8;
+    /** Допустимое отклонение коэффициента от узла после обрезки, в долях шага (граница решения — 1/4). */
+    static final double MARGIN = 1.0 / 16;
+    /** Строк блоков в одной задаче. */
+    static final int ROWS_PER_TASK = 4;
+
+    /** Номера коэффициентов (строка·8 + столбец) зигзага 6–13: (0,3) (1,2) (2,1) (3,0) (4,0) (3,1) (2,2) (1,3). */
+    static final int[] BAND = {3, 10, 17, 24, 32, 25, 18, 11};
+
+    private static final int CONST_BITS = 13;
+    private static final long FIX_0_382683433 = fix(0.382683433);
+    private static final long FIX_0_541196100 = fix(0.541196100);
+    private static final long FIX_0_707106781 = fix(0.707106781);
+    private static final long FIX_1_306562965 = fix(1.306562965);
+    private static final long FIX_1_082392200 = fix(1.082392200);
+    private static final long FIX_1_414213562 = fix(1.414213562);
+    private static final long FIX_1_847759065 = fix(1.847759065);
+    private static final long FIX_2_613125930 = fix(2.613125930);
+    /** Вход сдвигается на 3 бита (дробная точность), выход AAN умножен на 8 — итого 64. */
+    private static final int IN_BITS = 3;
+    /**
+     * Множители AAN: {@link #fdct} даёт F(u,v)·SCALE[u·8+v], где F — ортонормированный ДКП JPEG;
+     * SCALE = 64·a(u)·a(v), a(0) = 1, a(k) = √2·cos(kπ/16).
+     */
+    static final double[] SCALE = new double[64];
+
+    static {
+        double[] a = new double[BLOCK];
+        for (int k = 0; k < BLOCK; k++) {
+            a[k] = k == 0 ? 1.0 : Math.sqrt(2) * Math.cos(k * Math.PI / 16);
+        }
+        for (int u = 0; u < BLOCK; u++) {
+            for (int v = 0; v < BLOCK; v++) {
+                SCALE[u * BLOCK + v] = (1 << IN_BITS) * 8 * a[u] * a[v];
+            }
+        }
+    }
+
+    private DctWatermark() {
+    }
+
+    private static long fix(double c) {
+        return Math.round(c * (1 << CONST_BITS));
+    }
+
+    private static int mul(int x, long c) {
+        return (int) (x * c >> CONST_BITS);
+    }
+
+    /** Бит на изображение w×h (неполные блоки по краям не используются). */
+    public static int capacity(int w, int h) {
+        return (w / BLOCK) * (h / BLOCK) * BAND_SIZE;
+    }
+
+    /**
+     * Внедряет bits (первые min(bits.length, capacity) бит, по {@value #BAND_SIZE} на блок построчно)
+     * в яркости px (w×h, по строкам). step — шаг решётки на ортонормированных коэффициентах:
+     * больше — устойчивее к пережатию, но ниже PSNR.
+     */
+    public static void embed(byte[] px, int w, int h, int[] bits, long seed, double step) {
+        int bw = w / BLOCK;
+        int used = Math.min(bits.length, capacity(w, h));
+        if (used == 0) {
+            return;
+        }
+        int rows = (used + bw * BAND_SIZE - 1) / (bw * BAND_SIZE);
+        forBlockRows(rows, by -> {
+            int[] blk = new int[64];
+            long[] node = new long[BAND_SIZE];
+            for (int bx = 0; bx < bw; bx++) {
+                int base = (by * bw + bx) * BAND_SIZE;
+                if (base >= used) {
+                    break;
+                }
+                embedBlock(px, w, bx * BLOCK, by * BLOCK, bits, base, Math.min(BAND_SIZE, used - base),
+                        seed, step, blk, node);
+            }
+        });
+    }
+
+    private static void embedBlock(byte[] px, int w, int x0, int y0, int[] bits, int base, int count,
+                                   long seed, double step, int[] blk, long[] node) {
+        double half = step / 2;
+        double margin = step * MARGIN;
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            load(px, w, x0, y0, blk);
+            fdct(blk);
+            boolean done = pass > 0;
+            for (int j = 0; j < count; j++) {
+                int c = BAND[j];
+                double d = dither(seed, base + j, step);
+                double v = blk[c] / SCALE[c];
+                if (pass == 0) {
+                    double q = (v - d) / half;
+                    long k = Math.round(q);
+                    if ((k & 1) != (bits[base + j] & 1)) {
+                        k += q >= k ? 1 : -1;
+                    }
+                    node[j] = k;
+                } else {
+                    // узел прежний: повторная запись накапливает поправку против обрезки
+                    double drift = v - (node[j] * half + d);
+                    if (Math.abs(drift) <= margin) {
+                        continue;
+                    }
+                    done = false;
+                }
+                blk[c] = (int) Math.round((node[j] * half + d) * SCALE[c]);
+            }
+            if (done) {
+                return;
+            }
+            idct(blk);
+            store(blk, px, w, x0, y0);
+        }
+    }
+
+    /** Извлекает L бит (L не больше capacity) из яркостей px. */
+    public static int[] extract(byte[] px, int w, int h, int L, long seed, double step) {
+        if (L > capacity(w, h)) {
+            throw new IllegalArgumentException("Bit length " + L + " exceeds DCT capacity " + capacity(w, h));
+        }
+        int bw = w / BLOCK;
+        int[] bits = new int[L];
+        if (L == 0) {
+            return bits;
+        }
+        int rows = (L + bw * BAND_SIZE - 1) / (bw * BAND_SIZE);
+        forBlockRows(rows, by -> {
+            int[] blk = new int[64];
+            for (int bx = 0; bx < bw; bx++) {
+                int base = (by * bw + bx) * BAND_SIZE;
+                if (base >= L) {
+                    break;
+                }
+                load(px, w, bx * BLOCK, by * BLOCK, blk);
+                fdct(blk);
+                readBlock(blk, bits, base, Math.min(BAND_SIZE, L - base), seed, step);
+            }
+        });
+        return bits;
+    }
+
+    /** Биты base..base+count-1 по коэффициентам блока: чётность ближайшего узла. */
+    private static void readBlock(int[] coef, int[] bits, int base, int count, long seed, double step) {
+        double half = step / 2;
+        for (int j = 0; j < count; j++) {
+            int c = BAND[j];
+            bits[base + j] = (int) (Math.round((coef[c] / SCALE[c] - dither(seed, base + j, step)) / half) & 1);
+        }
+    }
+
+    /** Сдвиг решётки для бита i: псевдослучайный в [0, step), зависит только от ключа и номера. */
+    static double dither(long seed, int i, double step) {
+        long z = (i + seed) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z ^= z >>> 31;
+        return step * ((z >>> 11) * 0x1.0p-53);
+    }
+
+    private static void load(byte[] px, int w, int x0, int y0, int[] blk) {
+        for (int y = 0; y < BLOCK; y++) {
+            int o = (y0 + y) * w + x0;
+            for (int x = 0; x < BLOCK; x++) {
+                blk[y * BLOCK + x] = ((px[o + x] & 0xFF) - 128) << IN_BITS;
+            }
+        }
+    }
+
+    private static void store(int[] blk, byte[] px, int w, int x0, int y0) {
+        for (int y = 0; y < BLOCK; y++) {
+            int o = (y0 + y) * w + x0;
+            for (int x = 0; x < BLOCK; x++) {
+                int v = blk[y * BLOCK + x] + 128;
+                px[o + x] = (byte) Math.min(255, Math.max(0, v));
+            }
+        }
+    }
+
+    private static void forBlockRows(int rows, IntConsumer row) {
+        ForkJoinPool.commonPool().invoke(new BlockRows(row, 0, rows));
+    }
+
+    @SuppressWarnings("serial")
+    private static final class BlockRows extends RecursiveAction {
+        private final IntConsumer row;
+        private final int from;
+        private final int to;
+
+        BlockRows(IntConsumer row, int from, int to) {
+            this.row = row;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ROWS_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BlockRows(row, from, mid), new BlockRows(row, mid, to));
+                return;
+            }
+            for (int by = from; by < to; by++) {
+                row.accept(by);
+            }
+        }
+    }
+
+    /** Прямой AAN ДКП 8×8 на месте: сначала строки, затем столбцы; результат — F·{@link #SCALE}. */
+    static void fdct(int[] d) {
+        for (int i = 0; i < BLOCK; i++) {
+            fdct1(d, i * BLOCK, 1);
+        }
+        for (int i = 0; i < BLOCK; i++) {
+            fdct1(d, i, BLOCK);
+        }
+    }
+
+    private static void fdct1(int[] d, int o, int s) {
+        int tmp0 = d[o] + d[o + 7 * s];
+        int tmp7 = d[o] - d[o + 7 * s];
+        int tmp1 = d[o + s] + d[o + 6 * s];
+        int tmp6 = d[o + s] - d[o + 6 * s];
+        int tmp2 = d[o + 2 * s] + d[o + 5 * s];
+        int tmp5 = d[o + 2 * s] - d[o + 5 * s];
+        int tmp3 = d[o + 3 * s] + d[o + 4 * s];
+        int tmp4 = d[o + 3 * s] - d[o + 4 * s];
+
+        // чётная часть
+        int tmp10 = tmp0 + tmp3;
+        int tmp13 = tmp0 - tmp3;
+        int tmp11 = tmp1 + tmp2;
+        int tmp12 = tmp1 - tmp2;
+        d[o] = tmp10 + tmp11;
+        d[o + 4 * s] = tmp10 - tmp11;
+        int z1 = mul(tmp12 + tmp13, FIX_0_707106781);
+        d[o + 2 * s] = tmp13 + z1;
+        d[o + 6 * s] = tmp13 - z1;
+
+        // нечётная часть
+        tmp10 = tmp4 + tmp5;
+        tmp11 = tmp5 + tmp6;
+        tmp12 = tmp6 + tmp7;
+        int z5 = mul(tmp10 - tmp12, FIX_0_382683433);
+        int z2 = mul(tmp10, FIX_0_541196100) + z5;
+        int z4 = mul(tmp12, FIX_1_306562965) + z5;
+        int z3 = mul(tmp11, FIX_0_707106781);
+        int z11 = tmp7 + z3;
+        int z13 = tmp7 - z3;
+        d[o + 5 * s] = z13 + z2;
+        d[o + 3 * s] = z13 - z2;
+        d[o + s] = z11 + z4;
+        d[o + 7 * s] = z11 - z4;
+    }
+
+    /** Обратный AAN ДКП на месте для коэффициентов из {@link #fdct}; результат — яркость − 128 (не обрезана). */
+    static void idct(int[] d) {
+        for (int i = 0; i < BLOCK; i++) {
+            idct1(d, i, BLOCK);
+        }
+        for (int i = 0; i < BLOCK; i++) {
+            idct1(d, i * BLOCK, 1);
+        }
+        // масштаб: 8 (AAN) · 8 (проходы) · 2^IN_BITS
+        int shift = 6 + IN_BITS;
+        for (int i = 0; i < 64; i++) {
+            d[i] = (d[i] + (1 << (shift - 1))) >> shift;
+        }
+    }
+
+    private static void idct1(int[] d, int o, int s) {
+        int in0 = d[o];
+        int in1 = d[o + s];
+        int in2 = d[o + 2 * s];
+        int in3 = d[o + 3 * s];
+        int in4 = d[o + 4 * s];
+        int in5 = d[o + 5 * s];
+        int in6 = d[o + 6 * s];
+        int in7 = d[o + 7 * s];
+
+        // чётная часть
+        int tmp10 = in0 + in4;
+        int tmp11 = in0 - in4;
+        int tmp13 = in2 + in6;
+        int tmp12 = mul(in2 - in6, FIX_1_414213562) - tmp13;
+        int tmp0 = tmp10 + tmp13;
+        int tmp3 = tmp10 - tmp13;
+        int tmp1 = tmp11 + tmp12;
+        int tmp2 = tmp11 - tmp12;
+
+        // нечётная часть
+        int z13 = in5 + in3;
+        int z10 = in5 - in3;
+        int z11 = in1 + in7;
+        int z12 = in1 - in7;
+        int tmp7 = z11 + z13;
+        int t11 = mul(z11 - z13, FIX_1_414213562);
+        int z5 = mul(z10 + z12, FIX_1_847759065);
+        int t10 = mul(z12, FIX_1_082392200) - z5;
+        int t12 = mul(z10, -FIX_2_613125930) + z5;
+        int tmp6 = t12 - tmp7;
+        int tmp5 = t11 - tmp6;
+        int tmp4 = t10 + tmp5;
+
+        d[o] = tmp0 + tmp7;
+        d[o + 7 * s] = tmp0 - tmp7;
+        d[o + s] = tmp1 + tmp6;
+        d[o + 6 * s] = tmp1 - tmp6;
+        d[o + 2 * s] = tmp2 + tmp5;
+        d[o + 5 * s] = tmp2 - tmp5;
+        d[o + 4 * s] = tmp3 + tmp4;
+        d[o + 3 * s] = tmp3 - tmp4;
+    }
+}
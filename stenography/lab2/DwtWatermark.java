@@ -0,0 +1,402 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ЦВЗ в вейвлет-области: целочисленное лифтинг-преобразование (Хаар или CDF 5/3 из JPEG 2000,
+ * обратимые без потерь) на месте в массиве int, многоуровневое по схеме Маллата; биты логотипа
+ * квантуются (QIM, как в {@link DctWatermark}) в коэффициентах LL и HL последнего уровня.
+ * Преобразуется левая верхняя область со сторонами, кратными 2^levels; поля правее и ниже
+ * (меньше 2^levels пикселей) остаются как есть — как неполные блоки в ДКП.
+ * <p>
+ * Раскладка после {@code levels} уровней при bw = w >> levels, bh = h >> levels:
+ * LL — [0, bw) × [0, bh), HL (высокие частоты по строкам, низкие по столбцам) — [bw, 2bw) × [0, bh).
+ * Бит i лежит в LL по строкам, после bw·bh бит — в HL.
+ * <p>
+ * Преобразование идёт на месте в массиве int: строки — с буфером на одну строку, столбцы —
+ * полосами по {@value #STRIP} столбцов (каждый шаг лифтинга идёт по строкам полосы подряд в памяти,
+ * буфер — одна полоса). Сам массив коэффициентов — копия яркостей w×h в int: embed и extract
+ * выделяют его на вызов. Строки и полосы — задачи ForkJoinPool. После обратного преобразования
+ * пиксели обрезаются до 0..255. Сначала повторные проходы чинят биты, которые обрезка перевела через
+ * границу решения; от состояния без ошибок коэффициенты, ушедшие от узла дальше
+ * step·{@link DctWatermark#MARGIN} (но не ближе 0.5 — они целые), дотягиваются к узлу с упреждением,
+ * а в насыщенных областях — к соседнему узлу той же чётности. Всего до {@value #MAX_PASSES} проходов;
+ * остаётся лучший вариант без ошибок: одной верной чётности мало, у границы решения бит теряется от шума.
+ */
+public final class DwtWatermark {
+
+    public enum Wavelet {
+        /** S-преобразование: d = x1 − x0, s = x0 + ⌊d/2⌋. */
+        HAAR,
+        /** CDF 5/3 (LeGall): предсказание по двум соседям, обновление по двум d, симметричное продолжение. */
+        CDF53
+    }
+
+    public static final int DEFAULT_LEVELS = 2;
+    public static final int MAX_LEVELS = 5;
+    public static final double DEFAULT_STEP = 12.0;
+    static final int MAX_PASSES = 16;
+    /** Ширина полосы столбцов (64 int — 256 байт на строку полосы). */
+    static final int STRIP = 64;
+    /** Строк в одной задаче строчного прохода. */
+    private static final int ROWS_PER_TASK = 32;
+
+    private DwtWatermark() {
+    }
+
+    private static void checkSize(int w, int h, int levels) {
+        if (levels < 1 || levels > MAX_LEVELS) {
+            throw new IllegalArgumentException("levels must be in 1.." + MAX_LEVELS);
+        }
+        if ((w >> levels) < 1 || (h >> levels) < 1) {
+            throw new IllegalArgumentException("Image " + w + "x" + h + " is smaller than 2^" + levels);
+        }
+    }
+
+    /** Бит: LL и HL последнего уровня (поля за кратной 2^levels областью не используются). */
+    public static int capacity(int w, int h, int levels) {
+        return 2 * (w >> levels) * (h >> levels);
+    }
+
+    /**
+     * Прямое преобразование a (w×h, по строкам) на месте: levels уровней, на каждом строки, затем столбцы.
+     * Преобразуется левая верхняя область со сторонами, кратными 2^levels; поля правее и ниже не меняются.
+     */
+    public static void forward(int[] a, int w, int h, int levels, Wavelet wavelet) {
+        checkSize(w, h, levels);
+        int aw = w >> levels << levels;
+        int ah = h >> levels << levels;
+        for (int l = 0; l < levels; l++) {
+            int cw = aw >> l;
+            int ch = ah >> l;
+            ForkJoinPool.commonPool().invoke(new Pass(a, w, cw, ch, true, false, wavelet, 0, ch));
+            ForkJoinPool.commonPool().invoke(new Pass(a, w, cw, ch, false, false, wavelet, 0, strips(cw)));
+        }
+    }
+
+    /** Обратное к {@link #forward}. */
+    public static void inverse(int[] a, int w, int h, int levels, Wavelet wavelet) {
+        checkSize(w, h, levels);
+        int aw = w >> levels << levels;
+        int ah = h >> levels << levels;
+        for (int l = levels - 1; l >= 0; l--) {
+            int cw = aw >> l;
+            int ch = ah >> l;
+            ForkJoinPool.commonPool().invoke(new Pass(a, w, cw, ch, false, true, wavelet, 0, strips(cw)));
+            ForkJoinPool.commonPool().invoke(new Pass(a, w, cw, ch, true, true, wavelet, 0, ch));
+        }
+    }
+
+    private static int strips(int cw) {
+        return (cw + STRIP - 1) / STRIP;
+    }
+
+    /** Один проход уровня: строки [from, to) или полосы столбцов [from, to). */
+    @SuppressWarnings("serial")
+    private static final class Pass extends RecursiveAction {
+        private final int[] a;
+        private final int w;
+        private final int cw;
+        private final int ch;
+        private final boolean rows;
+        private final boolean inverse;
+        private final Wavelet wavelet;
+        private final int from;
+        private final int to;
+
+        Pass(int[] a, int w, int cw, int ch, boolean rows, boolean inverse, Wavelet wavelet, int from, int to) {
+            this.a = a;
+            this.w = w;
+            this.cw = cw;
+            this.ch = ch;
+            this.rows = rows;
+            this.inverse = inverse;
+            this.wavelet = wavelet;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > (rows ? ROWS_PER_TASK : 1)) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Pass(a, w, cw, ch, rows, inverse, wavelet, from, mid),
+                        new Pass(a, w, cw, ch, rows, inverse, wavelet, mid, to));
+                return;
+            }
+            int[] tmp = new int[rows ? cw : ch * Math.min(STRIP, cw)];
+            for (int i = from; i < to; i++) {
+                int base = rows ? i * w : i * STRIP;
+                int step = rows ? 1 : w;
+                int n = rows ? cw : ch;
+                int lanes = rows ? 1 : Math.min(STRIP, cw - base);
+                if (inverse) {
+                    inverse1(a, base, step, n, lanes, wavelet, tmp);
+                } else {
+                    forward1(a, base, step, n, lanes, wavelet, tmp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Одномерное прямое преобразование n элементов (n чётно) сразу для lanes соседних «дорожек»:
+     * элемент i дорожки j — a[base + i·step + j]. Строка — step = 1, lanes = 1; полоса столбцов —
+     * step = w, lanes = ширина полосы. Результат — n/2 низкочастотных, затем n/2 высокочастотных.
+     */
+    static void forward1(int[] a, int base, int step, int n, int lanes, Wavelet wavelet, int[] tmp) {
+        int half = n / 2;
+        if (lanes == 1 && step == 1) {
+            forwardRow(a, base, n, wavelet, tmp);
+            return;
+        }
+        if (wavelet == Wavelet.HAAR) {
+            for (int i = 0; i < half; i++) {
+                int e = base + 2 * i * step;
+                int o = e + step;
+                for (int j = 0; j < lanes; j++) {
+                    a[o + j] -= a[e + j];
+                    a[e + j] += a[o + j] >> 1;
+                }
+            }
+        } else {
+            for (int i = 0; i < half; i++) {
+                int e = base + 2 * i * step;
+                int o = e + step;
+                int r = 2 * i + 2 < n ? o + step : e;
+                for (int j = 0; j < lanes; j++) {
+                    a[o + j] -= (a[e + j] + a[r + j]) >> 1;
+                }
+            }
+            for (int i = 0; i < half; i++) {
+                int e = base + 2 * i * step;
+                int o = e + step;
+                int l = i > 0 ? e - step : o;
+                for (int j = 0; j < lanes; j++) {
+                    a[e + j] += (a[l + j] + a[o + j] + 2) >> 2;
+                }
+            }
+        }
+        // чётные (s) в первую половину, нечётные (d) во вторую
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(a, base + i * step, tmp, ((i & 1) * half + (i >> 1)) * lanes, lanes);
+        }
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(tmp, i * lanes, a, base + i * step, lanes);
+        }
+    }
+
+    /** Обратное к {@link #forward1}: перемежение s и d, затем шаги лифтинга в обратном порядке. */
+    static void inverse1(int[] a, int base, int step, int n, int lanes, Wavelet wavelet, int[] tmp) {
+        int half = n / 2;
+        if (lanes == 1 && step == 1) {
+            inverseRow(a, base, n, wavelet, tmp);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(a, base + i * step, tmp, i * lanes, lanes);
+        }
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(tmp, ((i & 1) * half + (i >> 1)) * lanes, a, base + i * step, lanes);
+        }
+        if (wavelet == Wavelet.HAAR) {
+            for (int i = 0; i < half; i++) {
+                int e = base + 2 * i * step;
+                int o = e + step;
+                for (int j = 0; j < lanes; j++) {
+                    a[e + j] -= a[o + j] >> 1;
+                    a[o + j] += a[e + j];
+                }
+            }
+        } else {
+            for (int i = 0; i < half; i++) {
+                int e = base + 2 * i * step;
+                int o = e + step;
+                int l = i > 0 ? e - step : o;
+                for (int j = 0; j < lanes; j++) {
+                    a[e + j] -= (a[l + j] + a[o + j] + 2) >> 2;
+                }
+            }
+            for (int i = 0; i < half; i++) {
+                int e = base + 2 * i * step;
+                int o = e + step;
+                int r = 2 * i + 2 < n ? o + step : e;
+                for (int j = 0; j < lanes; j++) {
+                    a[o + j] += (a[e + j] + a[r + j]) >> 1;
+                }
+            }
+        }
+    }
+
+    /** Строка подряд в памяти: шаги лифтинга сразу пишут s и d в буфер, без отдельного разделения. */
+    private static void forwardRow(int[] a, int base, int n, Wavelet wavelet, int[] tmp) {
+        int half = n / 2;
+        if (wavelet == Wavelet.HAAR) {
+            for (int i = 0; i < half; i++) {
+                int x0 = a[base + 2 * i];
+                int d = a[base + 2 * i + 1] - x0;
+                tmp[half + i] = d;
+                tmp[i] = x0 + (d >> 1);
+            }
+        } else {
+            for (int i = 0; i < half; i++) {
+                int r = 2 * i + 2 < n ? 2 * i + 2 : 2 * i;
+                tmp[half + i] = a[base + 2 * i + 1] - ((a[base + 2 * i] + a[base + r]) >> 1);
+            }
+            for (int i = 0; i < half; i++) {
+                int dl = tmp[half + (i > 0 ? i - 1 : 0)];
+                tmp[i] = a[base + 2 * i] + ((dl + tmp[half + i] + 2) >> 2);
+            }
+        }
+        System.arraycopy(tmp, 0, a, base, n);
+    }
+
+    private static void inverseRow(int[] a, int base, int n, Wavelet wavelet, int[] tmp) {
+        int half = n / 2;
+        if (wavelet == Wavelet.HAAR) {
+            for (int i = 0; i < half; i++) {
+                int d = a[base + half + i];
+                int x0 = a[base + i] - (d >> 1);
+                tmp[2 * i] = x0;
+                tmp[2 * i + 1] = d + x0;
+            }
+        } else {
+            for (int i = 0; i < half; i++) {
+                int dl = a[base + half + (i > 0 ? i - 1 : 0)];
+                tmp[2 * i] = a[base + i] - ((dl + a[base + half + i] + 2) >> 2);
+            }
+            for (int i = 0; i < half; i++) {
+                int r = 2 * i + 2 < n ? 2 * i + 2 : 2 * i;
+                tmp[2 * i + 1] = a[base + half + i] + ((tmp[2 * i] + tmp[r]) >> 1);
+            }
+        }
+        System.arraycopy(tmp, 0, a, base, n);
+    }
+
+    /** Индекс коэффициента для бита i: сначала LL, затем HL последнего уровня. */
+    private static int position(int i, int w, int bw, int bh) {
+        int ll = bw * bh;
+        return i < ll ? (i / bw) * w + i % bw : ((i - ll) / bw) * w + bw + (i - ll) % bw;
+    }
+
+    /**
+     * Внедряет первые min(bits.length, capacity) бит в яркости px (w×h, по строкам);
+     * step — шаг решётки QIM на целых коэффициентах.
+     */
+    public static void embed(byte[] px, int w, int h, int[] bits, long seed, double step, int levels,
+                             Wavelet wavelet) {
+        checkSize(w, h, levels);
+        int bw = w >> levels;
+        int bh = h >> levels;
+        int used = Math.min(bits.length, capacity(w, h, levels));
+        double half = step / 2;
+        // коэффициенты целые: ближе 0.5 к узлу может не получиться
+        double margin = Math.max(0.5, step * DctWatermark.MARGIN);
+        int[] a = new int[w * h];
+        long[] first = new long[used];
+        long[] node = new long[used];
+        double[] comp = new double[used];
+        byte[] best = null;
+        int bestFar = Integer.MAX_VALUE;
+        boolean refine = false;
+        for (int pass = 0; pass <= MAX_PASSES; pass++) {
+            for (int i = 0; i < a.length; i++) {
+                a[i] = px[i] & 0xFF;
+            }
+            forward(a, w, h, levels, wavelet);
+            if (pass > 0) {
+                // итог прошлого прохода: запоминается лучший вариант без ошибок чётности
+                int errors = 0;
+                int far = 0;
+                for (int i = 0; i < used; i++) {
+                    int p = position(i, w, bw, bh);
+                    double d = DctWatermark.dither(seed, i, step);
+                    if ((Math.round((a[p] - d) / half) & 1) != (bits[i] & 1)) {
+                        errors++;
+                    } else if (Math.abs(a[p] - (node[i] * half + d)) > margin) {
+                        far++;
+                    }
+                }
+                if (errors == 0 && far < bestFar) {
+                    bestFar = far;
+                    best = px.clone();
+                }
+                if (bestFar == 0 || pass == MAX_PASSES) {
+                    break;
+                }
+                // дотягивать к узлам только от состояния без ошибок, иначе сначала чинится чётность
+                refine = errors == 0;
+            }
+            for (int i = 0; i < used; i++) {
+                int p = position(i, w, bw, bh);
+                double d = DctWatermark.dither(seed, i, step);
+                double q = (a[p] - d) / half;
+                if (pass == 0) {
+                    // ближайший узел нужной чётности
+                    long k = Math.round(q);
+                    if ((k & 1) != (bits[i] & 1)) {
+                        k += q >= k ? 1 : -1;
+                    }
+                    first[i] = k;
+                    node[i] = k;
+                } else if ((Math.round(q) & 1) != (bits[i] & 1)) {
+                    // обрезка до 0..255 не дала дойти до узла: узел той же чётности со стороны сдвига
+                    node[i] = shift(node[i], first[i], q < node[i]);
+                    comp[i] = 0;
+                } else {
+                    double drift = a[p] - (node[i] * half + d);
+                    if (!refine || Math.abs(drift) <= margin) {
+                        continue;
+                    }
+                    if (comp[i] == 0) {
+                        // узел прежний, запись с упреждением на сдвиг от обрезки
+                        comp[i] = drift;
+                    } else {
+                        // упреждение не помогло (насыщение): узел со стороны сдвига
+                        node[i] = shift(node[i], first[i], drift < 0);
+                        comp[i] = 0;
+                    }
+                }
+                a[p] = (int) Math.round(node[i] * half + d - comp[i]);
+            }
+            inverse(a, w, h, levels, wavelet);
+            for (int i = 0; i < a.length; i++) {
+                px[i] = (byte) Math.min(255, Math.max(0, a[i]));
+            }
+        }
+        if (best != null) {
+            System.arraycopy(best, 0, px, 0, px.length);
+        }
+    }
+
+    /** Соседний узел той же чётности вниз или вверх, не дальше одного такого шага от исходного. */
+    private static long shift(long node, long first, boolean down) {
+        long k = node + (down ? -2 : 2);
+        return Math.abs(k - first) <= 2 ? k : node;
+    }
+
+    /** Извлекает L бит (L не больше capacity) из яркостей px. */
+    public static int[] extract(byte[] px, int w, int h, int L, long seed, double step, int levels,
+                                Wavelet wavelet) {
+        checkSize(w, h, levels);
+        if (L > capacity(w, h, levels)) {
+            throw new IllegalArgumentException("Bit length " + L + " exceeds DWT capacity " + capacity(w, h, levels));
+        }
+        int[] a = new int[w * h];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = px[i] & 0xFF;
+        }
+        forward(a, w, h, levels, wavelet);
+        int[] bits = new int[L];
+        read(a, w, w >> levels, h >> levels, bits, L, seed, step);
+        return bits;
+    }
+
+    /** Чётность ближайшего узла для первых count бит. */
+    private static void read(int[] a, int w, int bw, int bh, int[] bits, int count, long seed, double step) {
+        double half = step / 2;
+        for (int i = 0; i < count; i++) {
+            int p = position(i, w, bw, bh);
+            bits[i] = (int) (Math.round((a[p] - DctWatermark.dither(seed, i, step)) / half) & 1);
+        }
+    }
+}
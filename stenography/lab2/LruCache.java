@@ -0,0 +1,87 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Потокобезопасный LRU-кэш с ограничением по байтам: размер значения оценивает weigher, при превышении
+ * maxBytes вытесняются давно не использованные записи. Значение больше maxBytes не кэшируется.
+ * Считаются попадания, промахи и вытеснения. Значения отдаются как есть — изменять их нельзя.
+ */
+public final class LruCache<K, V> {
+
+    private final String name;
+    private final long maxBytes;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LruCache(String name, long maxBytes, ToLongFunction<V> weigher) {
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Значение по ключу; при промахе вычисляется (вне блокировки, так что тяжёлое вычисление
+     * не задерживает других) и кладётся в кэш.
+     */
+    public V get(K key, Function<K, V> compute) {
+        synchronized (this) {
+            V v = map.get(key);
+            if (v != null) {
+                hits++;
+                return v;
+            }
+            misses++;
+        }
+        V v = compute.apply(key);
+        put(key, v);
+        return v;
+    }
+
+    public synchronized void put(K key, V value) {
+        long w = weigher.applyAsLong(value);
+        if (w > maxBytes) {
+            return;
+        }
+        V old = map.put(key, value);
+        if (old != null) {
+            bytes -= weigher.applyAsLong(old);
+        }
+        bytes += w;
+        Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<K, V> e = it.next();
+            if (e.getKey().equals(key)) {
+                continue;
+            }
+            bytes -= weigher.applyAsLong(e.getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        bytes = 0;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized String stats() {
+        return String.format(Locale.ROOT, "%s: %d hit / %d miss, %d evicted, %d entries, %.1f of %.1f MB",
+                name, hits, misses, evictions, map.size(), bytes / 1048576.0, maxBytes / 1048576.0);
+    }
+}
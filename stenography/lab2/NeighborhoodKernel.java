@@ -0,0 +1,328 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Карты локальных критериев для всего изображения за один проход по массиву с полями: яркости
+ * копируются в byte[] шириной W+2r с повтором крайних пикселей (как у {@code sampleGray}),
+ * поэтому во внутренних циклах нет ни обращений к растру, ни проверок границ.
+ * <ul>
+ *   <li>градиент — центральные разности по соседям;</li>
+ *   <li>дисперсия — скользящие суммы яркостей и квадратов: по столбцам окна, затем вдоль строки;</li>
+ *   <li>контраст — max − min окна, раздельно по столбцам и по строкам: для окон от 5×5 алгоритмом
+ *       ван Херка / Гиля–Вермана (префиксные и суффиксные экстремумы блоков длины 2r+1, три сравнения
+ *       на пиксель при любом окне), для 3×3 — напрямую по трём соседям.</li>
+ * </ul>
+ * Маска яркостей (например 0xFE — только плоскости 2–8) позволяет строить карту, не зависящую
+ * от младшего бита: её одинаково получают и контейнер, и стего.
+ * <p>
+ * Строки делятся на полосы по {@value #TILE_ROWS}, полосы считаются задачами общего ForkJoinPool.
+ * Значения совпадают с {@link WatermarkEngine#adaptiveLocalScore} побитово: суммы целые, формулы те же.
+ * Внедрение берёт окно 3×3 ({@link #scores}, {@link #blindScores}); окна больше — через конструктор
+ * с radius и {@link #map}, их карты WatermarkBench сверяет с перебором для r = 2..4.
+ */
+public final class NeighborhoodKernel {
+
+    /** Строк в полосе (одна задача ForkJoin). */
+    static final int TILE_ROWS = 32;
+
+    private final int w;
+    private final int h;
+    private final int r;
+    private final int pw;
+    private final byte[] pad;
+
+    /** Копия яркостей gray с полями ширины radius. */
+    public NeighborhoodKernel(BufferedImage gray, int radius) {
+        this(gray, radius, 0xFF);
+    }
+
+    /** Копия яркостей gray, наложенных на маску mask (0xFE — без младшего бита), с полями ширины radius. */
+    public NeighborhoodKernel(BufferedImage gray, int radius, int mask) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("radius must be positive");
+        }
+        this.w = gray.getWidth();
+        this.h = gray.getHeight();
+        this.r = radius;
+        this.pw = w + 2 * radius;
+        this.pad = new byte[pw * (h + 2 * radius)];
+        WritableRaster raster = gray.getRaster();
+        boolean bytes = gray.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        byte[] row = new byte[w];
+        int[] samples = bytes ? null : new int[w];
+        for (int y = 0; y < h; y++) {
+            int base = (y + r) * pw;
+            if (bytes) {
+                raster.getDataElements(0, y, w, 1, row);
+            } else {
+                raster.getSamples(0, y, w, 1, 0, samples);
+                for (int x = 0; x < w; x++) {
+                    row[x] = (byte) samples[x];
+                }
+            }
+            if (mask != 0xFF) {
+                for (int x = 0; x < w; x++) {
+                    row[x] &= (byte) mask;
+                }
+            }
+            System.arraycopy(row, 0, pad, base + r, w);
+            for (int i = 0; i < r; i++) {
+                pad[base + i] = row[0];
+                pad[base + r + w + i] = row[w - 1];
+            }
+        }
+        for (int i = 0; i < r; i++) {
+            System.arraycopy(pad, r * pw, pad, i * pw, pw);
+            System.arraycopy(pad, (r + h - 1) * pw, pad, (r + h + i) * pw, pw);
+        }
+    }
+
+    /** Карта критерия variant (окно 3×3), индекс y*w+x. */
+    public static double[] scores(BufferedImage gray, WatermarkEngine.AdaptiveVariant variant) {
+        return new NeighborhoodKernel(gray, 1).map(variant);
+    }
+
+    /** Карта критерия variant (окно 3×3) по плоскостям 2–8: младший бит яркостей обнулён. */
+    public static double[] blindScores(BufferedImage gray, WatermarkEngine.AdaptiveVariant variant) {
+        return new NeighborhoodKernel(gray, 1, 0xFE).map(variant);
+    }
+
+    /** Карта критерия по окну (2r+1)×(2r+1); градиент всегда по ближайшим соседям. */
+    public double[] map(WatermarkEngine.AdaptiveVariant variant) {
+        double[] out = new double[w * h];
+        ForkJoinPool.commonPool().invoke(new Rows(variant, out, 0, h));
+        return out;
+    }
+
+    @SuppressWarnings("serial")
+    private final class Rows extends RecursiveAction {
+        private final WatermarkEngine.AdaptiveVariant variant;
+        private final double[] out;
+        private final int y0;
+        private final int y1;
+
+        Rows(WatermarkEngine.AdaptiveVariant variant, double[] out, int y0, int y1) {
+            this.variant = variant;
+            this.out = out;
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+
+        @Override
+        protected void compute() {
+            if (y1 - y0 > TILE_ROWS) {
+                int mid = (y0 + y1) >>> 1;
+                invokeAll(new Rows(variant, out, y0, mid), new Rows(variant, out, mid, y1));
+                return;
+            }
+            switch (variant) {
+                case GRADIENT:
+                    gradient(out, y0, y1);
+                    break;
+                case VARIANCE:
+                    variance(out, y0, y1);
+                    break;
+                case CONTRAST:
+                    contrast(out, y0, y1);
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.valueOf(variant));
+            }
+        }
+    }
+
+    private int at(int x, int y) {
+        return pad[(y + r) * pw + x + r] & 0xFF;
+    }
+
+    void gradient(double[] out, int y0, int y1) {
+        for (int y = y0; y < y1; y++) {
+            int o = y * w;
+            for (int x = 0; x < w; x++) {
+                int gx = at(x + 1, y) - at(x - 1, y);
+                int gy = at(x, y + 1) - at(x, y - 1);
+                // для целых |gx|, |gy| ≤ 255 sqrt(gx²+gy²) == Math.hypot(gx, gy) (проверено перебором)
+                out[o + x] = Math.sqrt(gx * gx + gy * gy);
+            }
+        }
+    }
+
+    void variance(double[] out, int y0, int y1) {
+        int k = 2 * r + 1;
+        int n = k * k;
+        int[] col = new int[pw];
+        int[] col2 = new int[pw];
+        // суммы по столбцам окна для первой строки полосы
+        for (int py = y0; py < y0 + k; py++) {
+            int base = py * pw;
+            for (int x = 0; x < pw; x++) {
+                int v = pad[base + x] & 0xFF;
+                col[x] += v;
+                col2[x] += v * v;
+            }
+        }
+        for (int y = y0; y < y1; y++) {
+            if (y > y0) {
+                int add = (y + k - 1) * pw;
+                int sub = (y - 1) * pw;
+                for (int x = 0; x < pw; x++) {
+                    int a = pad[add + x] & 0xFF;
+                    int s = pad[sub + x] & 0xFF;
+                    col[x] += a - s;
+                    col2[x] += a * a - s * s;
+                }
+            }
+            int sum = 0;
+            int sum2 = 0;
+            for (int x = 0; x < k - 1; x++) {
+                sum += col[x];
+                sum2 += col2[x];
+            }
+            int o = y * w;
+            for (int x = 0; x < w; x++) {
+                sum += col[x + k - 1];
+                sum2 += col2[x + k - 1];
+                double mean = (double) sum / n;
+                out[o + x] = Math.max(0.0, (double) sum2 / n - mean * mean);
+                sum -= col[x];
+                sum2 -= col2[x];
+            }
+        }
+    }
+
+    void contrast(double[] out, int y0, int y1) {
+        if (r == 1) {
+            contrast3x3(out, y0, y1);
+            return;
+        }
+        int k = 2 * r + 1;
+        int rows = y1 - y0 + k - 1;
+        int len = rows * pw;
+        int[] gMin = new int[len];
+        int[] gMax = new int[len];
+        int[] hMin = new int[len];
+        int[] hMax = new int[len];
+        // по столбцам: префиксные (g) и суффиксные (h) экстремумы блоков из k строк
+        int from = y0 * pw;
+        for (int i = 0; i < rows; i++) {
+            int o = i * pw;
+            if (i % k == 0) {
+                for (int x = 0; x < pw; x++) {
+                    int v = pad[from + o + x] & 0xFF;
+                    gMin[o + x] = v;
+                    gMax[o + x] = v;
+                }
+            } else {
+                for (int x = 0; x < pw; x++) {
+                    int v = pad[from + o + x] & 0xFF;
+                    gMin[o + x] = Math.min(gMin[o - pw + x], v);
+                    gMax[o + x] = Math.max(gMax[o - pw + x], v);
+                }
+            }
+        }
+        for (int i = rows - 1; i >= 0; i--) {
+            int o = i * pw;
+            if (i % k == k - 1 || i == rows - 1) {
+                for (int x = 0; x < pw; x++) {
+                    int v = pad[from + o + x] & 0xFF;
+                    hMin[o + x] = v;
+                    hMax[o + x] = v;
+                }
+            } else {
+                for (int x = 0; x < pw; x++) {
+                    int v = pad[from + o + x] & 0xFF;
+                    hMin[o + x] = Math.min(hMin[o + pw + x], v);
+                    hMax[o + x] = Math.max(hMax[o + pw + x], v);
+                }
+            }
+        }
+        int[] vMin = new int[pw];
+        int[] vMax = new int[pw];
+        int[] rowMin = new int[w];
+        int[] rowMax = new int[w];
+        int[] g = new int[pw];
+        int[] hh = new int[pw];
+        for (int y = y0; y < y1; y++) {
+            int top = (y - y0) * pw;
+            int bottom = top + (k - 1) * pw;
+            for (int x = 0; x < pw; x++) {
+                vMin[x] = Math.min(hMin[top + x], gMin[bottom + x]);
+                vMax[x] = Math.max(hMax[top + x], gMax[bottom + x]);
+            }
+            slidingMin(vMin, pw, k, rowMin, g, hh);
+            slidingMax(vMax, pw, k, rowMax, g, hh);
+            int o = y * w;
+            for (int x = 0; x < w; x++) {
+                out[o + x] = rowMax[x] - rowMin[x];
+            }
+        }
+    }
+
+    /**
+     * Окно 3×3 напрямую: по столбцам min/max трёх строк, затем трёх соседей в строке — 4 сравнения
+     * на пиксель на экстремум против 6 у ван Херка (его выигрыш начинается с окна 5×5).
+     */
+    private void contrast3x3(double[] out, int y0, int y1) {
+        int[] vMin = new int[pw];
+        int[] vMax = new int[pw];
+        for (int y = y0; y < y1; y++) {
+            int a = y * pw;
+            int b = a + pw;
+            int c = b + pw;
+            for (int x = 0; x < pw; x++) {
+                int p = pad[a + x] & 0xFF;
+                int q = pad[b + x] & 0xFF;
+                int t = pad[c + x] & 0xFF;
+                vMin[x] = Math.min(p, Math.min(q, t));
+                vMax[x] = Math.max(p, Math.max(q, t));
+            }
+            int o = y * w;
+            for (int x = 0; x < w; x++) {
+                int lo = Math.min(vMin[x], Math.min(vMin[x + 1], vMin[x + 2]));
+                int hi = Math.max(vMax[x], Math.max(vMax[x + 1], vMax[x + 2]));
+                out[o + x] = hi - lo;
+            }
+        }
+    }
+
+    /**
+     * Ван Херк / Гиль–Верман: res[i] = min in[i..i+k-1] для i = 0..len-k;
+     * g и h — буферы префиксных и суффиксных минимумов блоков длины k.
+     */
+    static void slidingMin(int[] in, int len, int k, int[] res, int[] g, int[] h) {
+        for (int b = 0; b < len; b += k) {
+            int end = Math.min(len, b + k);
+            g[b] = in[b];
+            for (int i = b + 1; i < end; i++) {
+                g[i] = Math.min(g[i - 1], in[i]);
+            }
+            h[end - 1] = in[end - 1];
+            for (int i = end - 2; i >= b; i--) {
+                h[i] = Math.min(h[i + 1], in[i]);
+            }
+        }
+        for (int i = 0; i + k <= len; i++) {
+            res[i] = Math.min(h[i], g[i + k - 1]);
+        }
+    }
+
+    /** То же для максимума. */
+    static void slidingMax(int[] in, int len, int k, int[] res, int[] g, int[] h) {
+        for (int b = 0; b < len; b += k) {
+            int end = Math.min(len, b + k);
+            g[b] = in[b];
+            for (int i = b + 1; i < end; i++) {
+                g[i] = Math.max(g[i - 1], in[i]);
+            }
+            h[end - 1] = in[end - 1];
+            for (int i = end - 2; i >= b; i--) {
+                h[i] = Math.max(h[i + 1], in[i]);
+            }
+        }
+        for (int i = 0; i + k <= len; i++) {
+            res[i] = Math.max(h[i], g[i + k - 1]);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Синдромно-решётчатые коды (STC): младшие биты пикселей y выбираются так, чтобы H·y = сообщение
+ * (H — полоса из подматрицы Ĥ высоты h и ширины w = n/m, сдвигаемой на строку на каждый бит сообщения),
+ * а суммарная цена изменённых пикселей была минимальной. Минимум ищется алгоритмом Витерби по решётке
+ * из 2^h состояний (частичные синдромы следующих h строк). Цены — из адаптивных оценок
+ * {@link WatermarkEngine#adaptiveScores}: чем «сложнее» окрестность, тем дешевле изменение.
+ * <p>
+ * Извлечение слепое: нужны только ключ (им задаются столбцы Ĥ), высота h и длина сообщения.
+ * Внутренние циклы работают по примитивным массивам без выделения памяти; путь решётки хранится
+ * битами (n × max(1, 2^h/64) слов long), поэтому h ограничена {@value #MAX_HEIGHT}, а путь —
+ * {@value #PATH_BUDGET_MB} МБ. Время растёт как 2^h: для 512×512 при h = 7 (по умолчанию) внедрение
+ * занимает примерно 0.15–0.7 с, при h = 8 — около 0.5 с, при h = 10 — 1.3–1.5 с (одиночный запуск, как в
+ * WatermarkLab), то есть в секунду укладываются только h ≤ 8.
+ */
+public final class StcEmbedder {
+
+    public static final int DEFAULT_HEIGHT = 7;
+    public static final int MAX_HEIGHT = 10;
+    /** Предел памяти под путь решётки: n × 2^h / 64 слов long. */
+    public static final int PATH_BUDGET_MB = 256;
+
+    private StcEmbedder() {
+    }
+
+    /** Столбцы Ĥ: старший и младший биты всегда единичные (так рекомендуют для хороших кодов). */
+    static int[] columns(int width, int height, long seed) {
+        Random rnd = new Random(seed);
+        int[] hhat = new int[width];
+        for (int j = 0; j < width; j++) {
+            hhat[j] = rnd.nextInt(1 << height) | 1 | (1 << (height - 1));
+        }
+        return hhat;
+    }
+
+    private static int width(int n, int m) {
+        if (m <= 0 || m > n) {
+            throw new IllegalArgumentException("Message length must be in 1.." + n + ", got " + m);
+        }
+        return n / m;
+    }
+
+    private static void checkHeight(int height) {
+        if (height < 1 || height > MAX_HEIGHT) {
+            throw new IllegalArgumentException("Constraint height must be in 1.." + MAX_HEIGHT);
+        }
+    }
+
+    /**
+     * Меняет младшие биты px (используются первые m·w пикселей) так, чтобы синдром был равен message;
+     * cost[i] — цена изменения пикселя i. Возвращает число изменённых пикселей.
+     */
+    public static int embed(int[] px, double[] cost, int[] message, int height, long seed) {
+        checkHeight(height);
+        int m = message.length;
+        int w = width(px.length, m);
+        int used = m * w;
+        int states = 1 << height;
+        int half = states >>> 1;
+        int words = Math.max(1, states >>> 6);
+        int[] hhat = columns(w, height, seed);
+
+        double[] wght = new double[states];
+        double[] next = new double[states];
+        Arrays.fill(wght, Double.POSITIVE_INFINITY);
+        wght[0] = 0;
+        long pathBytes = 8L * used * words;
+        if (pathBytes > (long) PATH_BUDGET_MB << 20) {
+            throw new IllegalArgumentException("Trellis path needs " + (pathBytes >> 20) + " MB, limit is "
+                    + PATH_BUDGET_MB + " MB; lower the height or the cover size");
+        }
+        long[] path = new long[used * words];
+
+        int idx = 0;
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < w; j++, idx++) {
+                int col = hhat[j];
+                int x = px[idx] & 1;
+                double c0 = x == 0 ? 0 : cost[idx];
+                double c1 = x == 1 ? 0 : cost[idx];
+                int base = idx * words;
+                // выбор пути копится в слове long и пишется одной записью на 64 состояния
+                for (int blk = 0, k = 0; blk < words; blk++) {
+                    int end = Math.min(states, k + 64);
+                    long bits = 0;
+                    for (; k < end; k++) {
+                        double w0 = wght[k] + c0;
+                        double w1 = wght[k ^ col] + c1;
+                        boolean one = w1 < w0;
+                        next[k] = one ? w1 : w0;
+                        bits |= (one ? 1L : 0L) << k;
+                    }
+                    path[base + blk] = bits;
+                }
+                double[] t = wght;
+                wght = next;
+                next = t;
+            }
+            // бит i синдрома закрыт: остаются состояния с младшим битом message[i], сдвиг на строку
+            int bit = message[i] & 1;
+            for (int k = 0; k < half; k++) {
+                wght[k] = wght[2 * k + bit];
+            }
+            Arrays.fill(wght, half, states, Double.POSITIVE_INFINITY);
+        }
+
+        int state = 0;
+        for (int k = 1; k < half; k++) {
+            if (wght[k] < wght[state]) {
+                state = k;
+            }
+        }
+        int changes = 0;
+        idx = used - 1;
+        for (int i = m - 1; i >= 0; i--) {
+            state = ((state << 1) | (message[i] & 1)) & (states - 1);
+            for (int j = w - 1; j >= 0; j--, idx--) {
+                int y = (int) (path[idx * words + (state >>> 6)] >>> (state & 63)) & 1;
+                if (y != (px[idx] & 1)) {
+                    px[idx] ^= 1;
+                    changes++;
+                }
+                if (y == 1) {
+                    state ^= hhat[j];
+                }
+            }
+        }
+        return changes;
+    }
+
+    /** Синдром H·y длины m по младшим битам px. */
+    public static int[] extract(int[] px, int m, int height, long seed) {
+        checkHeight(height);
+        int w = width(px.length, m);
+        int[] hhat = columns(w, height, seed);
+        int[] message = new int[m];
+        int idx = 0;
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < w; j++, idx++) {
+                if ((px[idx] & 1) != 0) {
+                    int col = hhat[j];
+                    int rows = Math.min(height, m - i);
+                    for (int r = 0; r < rows; r++) {
+                        message[i + r] ^= (col >>> r) & 1;
+                    }
+                }
+            }
+        }
+        return message;
+    }
+}
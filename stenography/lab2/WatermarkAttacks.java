@@ -0,0 +1,282 @@
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Атаки на стегоконтейнер для проверки устойчивости ЦВЗ: гауссов шум, JPEG-пережатие (ImageIO),
+ * обрезка, масштабирование, медианный и усредняющий фильтры, инверсия младших бит.
+ * Атака принимает яркости byte[] W×H и возвращает новый массив того же размера; исходный не меняется.
+ * Геометрия сохраняется, чтобы извлекать без синхронизации: обрезанные поля заполняются чёрным,
+ * масштабирование выполняется туда и обратно. Случайные атаки берут seed извне, так что результат
+ * не зависит от порядка выполнения задач.
+ */
+public final class WatermarkAttacks {
+
+    public enum Kind {
+        NOISE, JPEG, CROP, SCALE, MEDIAN, BLUR, LSB_FLIP
+    }
+
+    /** Одна точка сетки: вид атаки и её параметр. */
+    public static final class Attack {
+        final Kind kind;
+        final double param;
+
+        Attack(Kind kind, double param) {
+            this.kind = kind;
+            this.param = param;
+        }
+
+        /** Параметр для CSV: целый без дробной части. */
+        String paramText() {
+            return param == Math.rint(param)
+                    ? Long.toString((long) param)
+                    : String.format(Locale.ROOT, "%.2f", param);
+        }
+
+        byte[] apply(byte[] px, int w, int h, long seed) {
+            switch (kind) {
+                case NOISE:
+                    return gaussianNoise(px, seed, param);
+                case JPEG:
+                    return jpeg(px, w, h, (int) param);
+                case CROP:
+                    return crop(px, w, h, param);
+                case SCALE:
+                    return rescale(px, w, h, param);
+                case MEDIAN:
+                    return median(px, w, h, (int) param);
+                case BLUR:
+                    return blur(px, w, h, (int) param);
+                case LSB_FLIP:
+                    return flipLsb(px, seed, param);
+                default:
+                    throw new IllegalArgumentException("Неизвестная атака: " + kind);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return kind + "(" + paramText() + ")";
+        }
+    }
+
+    private WatermarkAttacks() {
+    }
+
+    /**
+     * Сетка по умолчанию: шум σ = 2, 5, 10; JPEG качества 90, 75, 50, 30; обрезка полей 5, 10, 20 %
+     * с каждой стороны; масштаб 0.5, 0.75, 1.5; медиана и среднее 3×3, 5×5; инверсия 1, 10, 50 % младших бит.
+     */
+    public static List<Attack> defaultGrid() {
+        List<Attack> grid = new ArrayList<>();
+        for (double sigma : new double[]{2, 5, 10}) {
+            grid.add(new Attack(Kind.NOISE, sigma));
+        }
+        for (int q : new int[]{90, 75, 50, 30}) {
+            grid.add(new Attack(Kind.JPEG, q));
+        }
+        for (double border : new double[]{0.05, 0.10, 0.20}) {
+            grid.add(new Attack(Kind.CROP, border));
+        }
+        for (double factor : new double[]{0.5, 0.75, 1.5}) {
+            grid.add(new Attack(Kind.SCALE, factor));
+        }
+        for (int size : new int[]{3, 5}) {
+            grid.add(new Attack(Kind.MEDIAN, size));
+        }
+        for (int size : new int[]{3, 5}) {
+            grid.add(new Attack(Kind.BLUR, size));
+        }
+        for (double p : new double[]{0.01, 0.10, 0.50}) {
+            grid.add(new Attack(Kind.LSB_FLIP, p));
+        }
+        return grid;
+    }
+
+    /** Аддитивный гауссов шум с СКО sigma, округление и насыщение в 0..255. */
+    static byte[] gaussianNoise(byte[] px, long seed, double sigma) {
+        Random rnd = new Random(seed);
+        byte[] out = new byte[px.length];
+        for (int i = 0; i < px.length; i++) {
+            long v = Math.round((px[i] & 0xFF) + sigma * rnd.nextGaussian());
+            out[i] = (byte) Math.min(255, Math.max(0, v));
+        }
+        return out;
+    }
+
+    /** JPEG-пережатие через ImageIO с заданным качеством 1..100 и обратное чтение. */
+    static byte[] jpeg(byte[] px, int w, int h, int quality) {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality / 100f);
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(toImage(px, w, h), null, null), param);
+            }
+            BufferedImage back = ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+            if (back == null) {
+                throw new IOException("ImageIO не прочитал JPEG");
+            }
+            return (byte[]) WatermarkEngine.toByteGray(back).getRaster().getDataElements(0, 0, w, h, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /** Обрезка: доля border ширины и высоты с каждой стороны заменяется чёрным. */
+    static byte[] crop(byte[] px, int w, int h, double border) {
+        int bx = (int) Math.round(w * border);
+        int by = (int) Math.round(h * border);
+        byte[] out = new byte[px.length];
+        for (int y = by; y < h - by; y++) {
+            System.arraycopy(px, y * w + bx, out, y * w + bx, w - 2 * bx);
+        }
+        return out;
+    }
+
+    /** Масштабирование в factor раз и обратно к W×H, оба раза билинейно. */
+    static byte[] rescale(byte[] px, int w, int h, double factor) {
+        int sw = Math.max(1, (int) Math.round(w * factor));
+        int sh = Math.max(1, (int) Math.round(h * factor));
+        return resample(resample(px, w, h, sw, sh), sw, sh, w, h);
+    }
+
+    /** Билинейная интерполяция по центрам пикселей, края повторяются. */
+    static byte[] resample(byte[] src, int sw, int sh, int dw, int dh) {
+        byte[] out = new byte[dw * dh];
+        int[] x0 = new int[dw];
+        int[] x1 = new int[dw];
+        double[] fx = new double[dw];
+        for (int x = 0; x < dw; x++) {
+            double sx = Math.min(sw - 1, Math.max(0, (x + 0.5) * sw / dw - 0.5));
+            x0[x] = (int) sx;
+            x1[x] = Math.min(sw - 1, x0[x] + 1);
+            fx[x] = sx - x0[x];
+        }
+        for (int y = 0; y < dh; y++) {
+            double sy = Math.min(sh - 1, Math.max(0, (y + 0.5) * sh / dh - 0.5));
+            int r0 = (int) sy * sw;
+            int r1 = Math.min(sh - 1, (int) sy + 1) * sw;
+            double fy = sy - (int) sy;
+            for (int x = 0; x < dw; x++) {
+                double top = (src[r0 + x0[x]] & 0xFF) * (1 - fx[x]) + (src[r0 + x1[x]] & 0xFF) * fx[x];
+                double bottom = (src[r1 + x0[x]] & 0xFF) * (1 - fx[x]) + (src[r1 + x1[x]] & 0xFF) * fx[x];
+                out[y * dw + x] = (byte) Math.round(top * (1 - fy) + bottom * fy);
+            }
+        }
+        return out;
+    }
+
+    /** Медианный фильтр size×size (size нечётный), края повторяются. */
+    static byte[] median(byte[] px, int w, int h, int size) {
+        int r = size / 2;
+        int n = size * size;
+        int[] win = new int[n];
+        byte[] out = new byte[px.length];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int k = 0;
+                for (int dy = -r; dy <= r; dy++) {
+                    int row = clamp(y + dy, h) * w;
+                    for (int dx = -r; dx <= r; dx++) {
+                        win[k++] = px[row + clamp(x + dx, w)] & 0xFF;
+                    }
+                }
+                Arrays.sort(win);
+                out[y * w + x] = (byte) win[n / 2];
+            }
+        }
+        return out;
+    }
+
+    /** Усредняющий фильтр size×size: раздельные суммы по строкам и столбцам, края повторяются. */
+    static byte[] blur(byte[] px, int w, int h, int size) {
+        int r = size / 2;
+        int n = size * size;
+        int[] rows = new int[px.length];
+        for (int y = 0; y < h; y++) {
+            int o = y * w;
+            for (int x = 0; x < w; x++) {
+                int s = 0;
+                for (int dx = -r; dx <= r; dx++) {
+                    s += px[o + clamp(x + dx, w)] & 0xFF;
+                }
+                rows[o + x] = s;
+            }
+        }
+        byte[] out = new byte[px.length];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int s = 0;
+                for (int dy = -r; dy <= r; dy++) {
+                    s += rows[clamp(y + dy, h) * w + x];
+                }
+                out[y * w + x] = (byte) ((s + n / 2) / n);
+            }
+        }
+        return out;
+    }
+
+    /** Инверсия младшего бита у доли p пикселей, выбранных случайно. */
+    static byte[] flipLsb(byte[] px, long seed, double p) {
+        Random rnd = new Random(seed);
+        byte[] out = px.clone();
+        for (int i = 0; i < out.length; i++) {
+            if (rnd.nextDouble() < p) {
+                out[i] ^= 1;
+            }
+        }
+        return out;
+    }
+
+    private static int clamp(int v, int n) {
+        return v < 0 ? 0 : v >= n ? n - 1 : v;
+    }
+
+    /** Серое изображение поверх копии яркостей — для извлечения через WatermarkEngine. */
+    static BufferedImage toImage(byte[] px, int w, int h) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+        img.getRaster().setDataElements(0, 0, w, h, px);
+        return img;
+    }
+
+    /** PSNR между двумя массивами яркостей одного размера; для совпадающих — 99.99, как в WatermarkEngine. */
+    static double psnr(byte[] a, byte[] b) {
+        long se = 0;
+        for (int i = 0; i < a.length; i++) {
+            int d = (a[i] & 0xFF) - (b[i] & 0xFF);
+            se += d * d;
+        }
+        if (se == 0) {
+            return 99.99;
+        }
+        return 10 * Math.log10(255.0 * 255.0 * a.length / se);
+    }
+
+    /**
+     * Выполняет task(0..n-1) как независимые задачи параллельного потока (ForkJoinPool): каждая атака
+     * с извлечением — отдельная задача, так что перебор сетки загружает все ядра.
+     */
+    static void forEachTask(int n, IntConsumer task) {
+        IntStream.range(0, n).parallel().forEach(task);
+    }
+}
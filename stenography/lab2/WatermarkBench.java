@@ -0,0 +1,165 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Микробенчмарк адаптивного внедрения для каждого варианта критерия: карта критерия попиксельно
+ * ({@link WatermarkEngine#adaptiveLocalScore}) против {@link NeighborhoodKernel}, прежняя сортировка
+ * Integer[] с компаратором против {@link WatermarkEngine#orderByScoreDescending} (подсчёт / поразрядная).
+ * Перед замером проверяется, что карты и порядки совпадают; карты ядра для окон 5×5..9×9
+ * (контраст — ван Херк) сверяются с перебором окна. В конце — внедрение и извлечение
+ * в области ДКП ({@link DctWatermark}) и вейвлетов ({@link DwtWatermark}).
+ * <p>
+ * Запуск из каталога lab2:
+ * {@code javac -encoding UTF-8 *.java && java WatermarkBench [..\container1\1.bmp] [итераций]}
+ */
+public final class WatermarkBench {
+
+    private static final String DEFAULT_IMAGE = "../container1/1.bmp";
+    private static final int WARMUP = 10;
+
+    private WatermarkBench() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String path = args.length > 0 ? args[0] : DEFAULT_IMAGE;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        BufferedImage gray = WatermarkEngine.readImage(new File(path));
+        int n = gray.getWidth() * gray.getHeight();
+        System.out.println("Image: " + path + " (" + gray.getWidth() + "x" + gray.getHeight() + ")");
+
+        for (WatermarkEngine.AdaptiveVariant variant : WatermarkEngine.AdaptiveVariant.values()) {
+            double[] score = WatermarkEngine.adaptiveScores(gray, variant);
+            boolean sameScores = Arrays.equals(pixelScores(gray, variant), score);
+            boolean same = Arrays.equals(boxedOrder(score), WatermarkEngine.orderByScoreDescending(score));
+            System.out.println(variant + ": scores identical = " + sameScores + ", orders identical = " + same);
+            if (!sameScores || !same) {
+                throw new IllegalStateException("Score map or order mismatch for " + variant);
+            }
+            String tag = variant.name().toLowerCase(Locale.ROOT);
+            report("pixel  " + tag, n, iterations, () -> pixelScores(gray, variant));
+            report("kernel " + tag, n, iterations, () -> WatermarkEngine.adaptiveScores(gray, variant));
+            report("boxed  " + tag, n, iterations, () -> boxedOrder(score));
+            report("radix  " + tag, n, iterations, () -> WatermarkEngine.orderByScoreDescending(score));
+        }
+
+        // окна 5×5..9×9 (контраст — ван Херк): карта ядра против перебора окна у каждого пикселя
+        for (int r = 2; r <= 4; r++) {
+            for (WatermarkEngine.AdaptiveVariant variant : new WatermarkEngine.AdaptiveVariant[]{
+                    WatermarkEngine.AdaptiveVariant.VARIANCE, WatermarkEngine.AdaptiveVariant.CONTRAST}) {
+                NeighborhoodKernel kernel = new NeighborhoodKernel(gray, r);
+                boolean same = Arrays.equals(windowScores(gray, variant, r), kernel.map(variant));
+                System.out.println(variant + " r=" + r + ": scores identical = " + same);
+                if (!same) {
+                    throw new IllegalStateException("Score map mismatch for " + variant + " r=" + r);
+                }
+                String tag = variant.name().toLowerCase(Locale.ROOT) + " r" + r;
+                report("kernel " + tag, n, iterations, () -> kernel.map(variant));
+            }
+        }
+
+        // ДКП 8×8 + QIM: внедрение и извлечение всей ёмкости
+        int[] bits = new int[DctWatermark.capacity(gray.getWidth(), gray.getHeight())];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = (i * 7 + i / 3) & 1;
+        }
+        WatermarkEngine.EmbedResult dct = WatermarkEngine.embedDct(gray, bits, "bench", DctWatermark.DEFAULT_STEP);
+        report("dct    embed", n, iterations,
+                () -> WatermarkEngine.embedDct(gray, bits, "bench", DctWatermark.DEFAULT_STEP));
+        report("dct    extract", n, iterations,
+                () -> WatermarkEngine.extractDct(dct.stego, "bench", bits.length, DctWatermark.DEFAULT_STEP));
+
+        // вейвлеты: само преобразование туда и обратно, внедрение и извлечение
+        int w = gray.getWidth();
+        int h = gray.getHeight();
+        int[] coef = gray.getRaster().getSamples(0, 0, w, h, 0, (int[]) null);
+        for (DwtWatermark.Wavelet wavelet : DwtWatermark.Wavelet.values()) {
+            String tag = wavelet.name().toLowerCase(Locale.ROOT);
+            report("dwt " + tag + " f+i", n, iterations, () -> {
+                DwtWatermark.forward(coef, w, h, DwtWatermark.DEFAULT_LEVELS, wavelet);
+                DwtWatermark.inverse(coef, w, h, DwtWatermark.DEFAULT_LEVELS, wavelet);
+            });
+            int L = WatermarkEngine.dwtBitLength(w, h, Integer.MAX_VALUE, DwtWatermark.DEFAULT_LEVELS);
+            int[] dwtBits = Arrays.copyOf(bits, L);
+            WatermarkEngine.EmbedResult dwt = WatermarkEngine.embedDwt(gray, dwtBits, "bench",
+                    DwtWatermark.DEFAULT_STEP, DwtWatermark.DEFAULT_LEVELS, wavelet);
+            report("dwt " + tag + " embed", n, iterations, () -> WatermarkEngine.embedDwt(gray, dwtBits, "bench",
+                    DwtWatermark.DEFAULT_STEP, DwtWatermark.DEFAULT_LEVELS, wavelet));
+            report("dwt " + tag + " extr", n, iterations, () -> WatermarkEngine.extractDwt(dwt.stego, "bench", L,
+                    DwtWatermark.DEFAULT_STEP, DwtWatermark.DEFAULT_LEVELS, wavelet));
+        }
+    }
+
+    /** Прежняя карта критерия: по пикселю через растр и проверку границ. */
+    static double[] pixelScores(BufferedImage gray, WatermarkEngine.AdaptiveVariant variant) {
+        int w = gray.getWidth();
+        double[] score = new double[w * gray.getHeight()];
+        for (int i = 0; i < score.length; i++) {
+            score[i] = WatermarkEngine.adaptiveLocalScore(gray, i % w, i / w, variant);
+        }
+        return score;
+    }
+
+    /** Дисперсия или размах яркости в окне (2r+1)×(2r+1) перебором, края повторяются. */
+    static double[] windowScores(BufferedImage gray, WatermarkEngine.AdaptiveVariant variant, int r) {
+        int w = gray.getWidth();
+        int h = gray.getHeight();
+        int[] px = gray.getRaster().getSamples(0, 0, w, h, 0, (int[]) null);
+        int n = (2 * r + 1) * (2 * r + 1);
+        double[] score = new double[w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                double sum = 0;
+                double sum2 = 0;
+                int min = 255;
+                int max = 0;
+                for (int dy = -r; dy <= r; dy++) {
+                    int row = Math.min(h - 1, Math.max(0, y + dy)) * w;
+                    for (int dx = -r; dx <= r; dx++) {
+                        int v = px[row + Math.min(w - 1, Math.max(0, x + dx))] & 0xFF;
+                        sum += v;
+                        sum2 += v * v;
+                        min = Math.min(min, v);
+                        max = Math.max(max, v);
+                    }
+                }
+                double mean = sum / n;
+                score[y * w + x] = variant == WatermarkEngine.AdaptiveVariant.CONTRAST
+                        ? max - min
+                        : Math.max(0.0, sum2 / n - mean * mean);
+            }
+        }
+        return score;
+    }
+
+    /** Прежняя реализация: устойчивая сортировка Integer[] по убыванию score. */
+    static int[] boxedOrder(double[] score) {
+        int n = score.length;
+        Integer[] ord = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            ord[i] = i;
+        }
+        Arrays.sort(ord, (a, b) -> Double.compare(score[b], score[a]));
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = ord[i];
+        }
+        return order;
+    }
+
+    /** Прогрев, затем среднее по итерациям; печатается мс на операцию и пикселей в секунду. */
+    static void report(String name, long pixelsPerOp, int iterations, Runnable op) {
+        for (int i = 0; i < WARMUP; i++) {
+            op.run();
+        }
+        long t0 = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            op.run();
+        }
+        double sec = (System.nanoTime() - t0) / 1e9;
+        System.out.println(String.format(Locale.ROOT, "%-16s %10.3f ms/op %14.3e px/s",
+                name, 1000.0 * sec / iterations, pixelsPerOp * (double) iterations / sec));
+    }
+}
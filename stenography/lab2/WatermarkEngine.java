@@ -8,8 +8,6 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Random;
-import javax.imageio.ImageIO;
 
 /**
  * Цифровой водяной знак: LSB с порядком по секретному ключу; адаптивное внедрение (окно 3×3):
@@ -28,9 +26,31 @@ public final class WatermarkEngine {
         CONTRAST
     }
 
+    /** Общий предел кэшей порядков и карт критериев — -Dwatermark.cache.mb (по умолчанию 64 МБ), пополам. */
+    private static final long CACHE_BYTES = Long.getLong("watermark.cache.mb", 64L) << 20;
+
+    /**
+     * Кэш адаптивных порядков по содержимому контейнера и варианту (SHA-256 пикселей): embedAdaptive
+     * и extractAdaptive по тому же контейнеру не пересчитывают критерий и сортировку.
+     */
+    private static final LruCache<String, int[]> ORDER_CACHE = new LruCache<>("adaptive orders",
+            CACHE_BYTES / 2, o -> 16L + 4L * o.length);
+    /** Кэш карт критериев (тот же ключ): общий для адаптивного порядка и цен STC. */
+    private static final LruCache<String, double[]> SCORE_CACHE = new LruCache<>("score maps",
+            CACHE_BYTES - CACHE_BYTES / 2, s -> 16L + 8L * s.length);
+    /** Кэш ключевых перестановок по размеру и ключу (раунд-ключи без повторного SHA-256). */
+    private static final LruCache<String, KeyedPermutation> PERMUTATION_CACHE = new LruCache<>("key permutations",
+            1L << 20, p -> 128L);
+
     private WatermarkEngine() {
     }
 
+    /** Статистика кэшей (попадания, промахи, вытеснения, занятый объём). */
+    public static String cacheStats() {
+        String nl = System.lineSeparator();
+        return ORDER_CACHE.stats() + nl + SCORE_CACHE.stats() + nl + PERMUTATION_CACHE.stats();
+    }
+
     private static int sampleGray(WritableRaster r, int w, int h, int x, int y) {
         x = Math.min(w - 1, Math.max(0, x));
         y = Math.min(h - 1, Math.max(0, y));
@@ -38,7 +58,7 @@ public final class WatermarkEngine {
     }
 
     public static BufferedImage readImage(File f) throws IOException {
-        BufferedImage img = ImageIO.read(f);
+        BufferedImage img = BmpFile.read(f.toPath());
         if (img == null) {
             throw new IOException("Cannot read: " + f);
         }
@@ -95,21 +115,14 @@ public final class WatermarkEngine {
         }
     }
 
-    /** Перестановка индексов пикселей 0..wh-1 (строка: y*w+x). */
+    /** Ленивая перестановка индексов пикселей 0..wh-1 (строка: y*w+x) по ключу. */
+    public static KeyedPermutation keyedPermutation(int w, int h, String key) {
+        return PERMUTATION_CACHE.get(w + "x" + h + ":" + key, k -> new KeyedPermutation(w * h, seedFromKey(key)));
+    }
+
+    /** Перестановка индексов пикселей 0..wh-1 целиком (та же, что {@link #keyedPermutation}). */
     public static int[] permutationFromKey(int w, int h, String key) {
-        int n = w * h;
-        int[] p = new int[n];
-        for (int i = 0; i < n; i++) {
-            p[i] = i;
-        }
-        Random rnd = new Random(seedFromKey(key));
-        for (int i = n - 1; i > 0; i--) {
-            int j = rnd.nextInt(i + 1);
-            int t = p[i];
-            p[i] = p[j];
-            p[j] = t;
-        }
-        return p;
+        return keyedPermutation(w, h, key).prefix(w * h);
     }
 
     public static int[] linearizeLogoBits(BufferedImage logoGrayBinary) {
@@ -262,36 +275,180 @@ public final class WatermarkEngine {
      * Порядок индексов пикселей по убыванию локального критерия (внедрение сначала в «сложных» по метрике местах).
      */
     public static int[] adaptiveEmbeddingOrder(BufferedImage gray, AdaptiveVariant variant) {
-        int w = gray.getWidth();
-        int h = gray.getHeight();
-        int n = w * h;
-        double[] score = new double[n];
-        for (int i = 0; i < n; i++) {
-            int x = i % w;
-            int y = i / w;
-            score[i] = adaptiveLocalScore(gray, x, y, variant);
+        return orderByScoreDescending(adaptiveScores(gray, variant));
+    }
+
+    /**
+     * Индексы по убыванию score, при равенстве — по возрастанию индекса (как устойчивая сортировка
+     * с компаратором {@code Double.compare(score[b], score[a])}, порядок совпадает побитово).
+     * Без упаковки в Integer: если все значения — целые 0..65535 (контраст, 0..255), один проход
+     * сортировки подсчётом; иначе поразрядная LSD-сортировка по 16 бит 64-битного ключа
+     * ({@link #descendingKey}), проходы с одинаковым разрядом у всех элементов пропускаются.
+     * Градиент и дисперсию квантовать не нужно: ключ точный, порядок тот же, что у сравнения double.
+     */
+    public static int[] orderByScoreDescending(double[] score) {
+        int n = score.length;
+        int[] order = new int[n];
+        if (countingOrderDescending(score, order)) {
+            return order;
         }
-        Integer[] ord = new Integer[n];
+        long[] key = new long[n];
         for (int i = 0; i < n; i++) {
-            ord[i] = i;
+            key[i] = descendingKey(score[i]);
+            order[i] = i;
         }
-        Arrays.sort(ord, (a, b) -> Double.compare(score[b], score[a]));
-        int[] order = new int[n];
-        for (int i = 0; i < n; i++) {
-            order[i] = ord[i];
+        long[] keyTmp = new long[n];
+        int[] orderTmp = new int[n];
+        int[] count = new int[1 << 16];
+        for (int shift = 0; shift < 64; shift += 16) {
+            Arrays.fill(count, 0);
+            for (int i = 0; i < n; i++) {
+                count[(int) (key[i] >>> shift) & 0xFFFF]++;
+            }
+            if (n == 0 || count[(int) (key[0] >>> shift) & 0xFFFF] == n) {
+                continue;
+            }
+            for (int d = 0, pos = 0; d < count.length; d++) {
+                int c = count[d];
+                count[d] = pos;
+                pos += c;
+            }
+            for (int i = 0; i < n; i++) {
+                int at = count[(int) (key[i] >>> shift) & 0xFFFF]++;
+                keyTmp[at] = key[i];
+                orderTmp[at] = order[i];
+            }
+            long[] tk = key;
+            key = keyTmp;
+            keyTmp = tk;
+            int[] to = order;
+            order = orderTmp;
+            orderTmp = to;
         }
         return order;
     }
+
+    /**
+     * Беззнаковый 64-битный ключ: меньший ключ — большее значение в порядке {@link Double#compare}
+     * (биты double с поправкой знака, затем инверсия).
+     */
+    static long descendingKey(double v) {
+        long bits = Double.doubleToLongBits(v);
+        return ~(bits ^ ((bits >> 63) | Long.MIN_VALUE));
+    }
+
+    /** Сортировка подсчётом, если все значения — целые 0..65535; иначе false, order не заполнен. */
+    private static boolean countingOrderDescending(double[] score, int[] order) {
+        int max = 0;
+        for (double v : score) {
+            int k = (int) v;
+            if (k != v || k < 0 || k > 0xFFFF || Double.doubleToRawLongBits(v) == Long.MIN_VALUE) {
+                return false;
+            }
+            max = Math.max(max, k);
+        }
+        int[] start = new int[max + 2];
+        for (double v : score) {
+            start[max - (int) v + 1]++;
+        }
+        for (int d = 1; d < start.length; d++) {
+            start[d] += start[d - 1];
+        }
+        for (int i = 0; i < score.length; i++) {
+            order[start[max - (int) score[i]]++] = i;
+        }
+        return true;
+    }
+
+    /** {@link #adaptiveEmbeddingOrder} через кэш; возвращаемый массив общий — изменять его нельзя. */
+    public static int[] cachedAdaptiveOrder(BufferedImage gray, AdaptiveVariant variant) {
+        String key = cacheKey(gray, variant);
+        return ORDER_CACHE.get(key, k -> orderByScoreDescending(cachedAdaptiveScores(gray, variant, key)));
+    }
+
+    /** {@link #adaptiveScores} через кэш; возвращаемый массив общий — изменять его нельзя. */
+    public static double[] cachedAdaptiveScores(BufferedImage gray, AdaptiveVariant variant) {
+        return cachedAdaptiveScores(gray, variant, cacheKey(gray, variant));
+    }
+
+    private static double[] cachedAdaptiveScores(BufferedImage gray, AdaptiveVariant variant, String key) {
+        return SCORE_CACHE.get(key, k -> adaptiveScores(gray, variant));
+    }
+
+    private static String cacheKey(BufferedImage gray, AdaptiveVariant variant) {
+        return variant + ":" + gray.getWidth() + "x" + gray.getHeight() + ":" + contentHash(gray, 0xFF);
+    }
+
+    /**
+     * Слепой адаптивный порядок: критерий по плоскостям 2–8 ({@link NeighborhoodKernel#blindScores}),
+     * которые LSB-внедрение не меняет, поэтому порядок по контейнеру и по стего один и тот же.
+     * Кэшируется по хешу тех же плоскостей — внедрение и проверка делят одну запись. Массив не изменять.
+     */
+    public static int[] blindAdaptiveOrder(BufferedImage gray, AdaptiveVariant variant) {
+        String key = "blind:" + variant + ":" + gray.getWidth() + "x" + gray.getHeight() + ":"
+                + contentHash(gray, 0xFE);
+        return ORDER_CACHE.get(key, k -> orderByScoreDescending(NeighborhoodKernel.blindScores(gray, variant)));
+    }
+
+    /** Тот же порядок без кэша — для разовых изображений, чтобы не вытеснять порядки контейнеров. */
+    public static int[] blindAdaptiveOrderUncached(BufferedImage gray, AdaptiveVariant variant) {
+        return orderByScoreDescending(NeighborhoodKernel.blindScores(gray, variant));
+    }
+
+    /** SHA-256 яркостей изображения, наложенных на маску mask (hex). */
+    static String contentHash(BufferedImage gray, int mask) {
+        int w = gray.getWidth();
+        int h = gray.getHeight();
+        WritableRaster r = gray.getRaster();
+        int[] row = new int[w];
+        byte[] buf = new byte[w];
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (int y = 0; y < h; y++) {
+                r.getSamples(0, y, w, 1, 0, row);
+                for (int x = 0; x < w; x++) {
+                    buf[x] = (byte) (row[x] & mask);
+                }
+                md.update(buf);
+            }
+            StringBuilder sb = new StringBuilder(64);
+            for (byte b : md.digest()) {
+                sb.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Локальный критерий для всех пикселей, индекс y*w+x: {@link NeighborhoodKernel} (массив с полями,
+     * скользящие суммы и min/max, полосы строк параллельно); значения те же, что у {@link #adaptiveLocalScore}.
+     */
+    public static double[] adaptiveScores(BufferedImage gray, AdaptiveVariant variant) {
+        return NeighborhoodKernel.scores(gray, variant);
+    }
+
+    /** Цена изменения пикселя для STC: обратна локальному критерию (текстура — дешево, гладкие места — дорого). */
+    public static double[] stcCosts(BufferedImage gray, AdaptiveVariant variant) {
+        double[] score = cachedAdaptiveScores(gray, variant);
+        double[] cost = new double[score.length];
+        for (int i = 0; i < cost.length; i++) {
+            cost[i] = 1.0 / (1.0 + score[i]);
+        }
+        return cost;
+    }
+
     public static EmbedResult embedKeyLsb(BufferedImage cover, int[] logoBits, String key) {
         BufferedImage stego = copyGray(cover);
         int w = stego.getWidth();
         int h = stego.getHeight();
         int L = embedBitLength(w, h, logoBits.length);
         int[] stream = buildStream(logoBits, L);
-        int[] perm = permutationFromKey(w, h, key);
+        KeyedPermutation perm = keyedPermutation(w, h, key);
         WritableRaster r = stego.getRaster();
         for (int i = 0; i < L; i++) {
-            int idx = perm[i];
+            int idx = perm.get(i);
             int x = indexToX(idx, w);
             int y = indexToY(idx, w);
             setLsb(r, x, y, stream[i]);
@@ -305,7 +462,7 @@ public final class WatermarkEngine {
         int h = stego.getHeight();
         int L = embedBitLength(w, h, logoBits.length);
         int[] stream = buildStream(logoBits, L);
-        int[] order = adaptiveEmbeddingOrder(cover, variant);
+        int[] order = cachedAdaptiveOrder(cover, variant);
         WritableRaster r = stego.getRaster();
         for (int i = 0; i < L; i++) {
             int idx = order[i];
@@ -316,14 +473,118 @@ public final class WatermarkEngine {
         return new EmbedResult(stego, L, null, order);
     }
 
+    /**
+     * Адаптивное внедрение без контейнера при извлечении: порядок {@link #blindAdaptiveOrder} зависит
+     * только от плоскостей 2–8, поэтому {@link #extractAdaptiveBlind} восстанавливает его по стего.
+     */
+    public static EmbedResult embedAdaptiveBlind(BufferedImage cover, int[] logoBits, AdaptiveVariant variant) {
+        BufferedImage stego = copyGray(cover);
+        int w = stego.getWidth();
+        int L = embedBitLength(w, stego.getHeight(), logoBits.length);
+        int[] stream = buildStream(logoBits, L);
+        int[] order = blindAdaptiveOrder(cover, variant);
+        WritableRaster r = stego.getRaster();
+        for (int i = 0; i < L; i++) {
+            int idx = order[i];
+            setLsb(r, indexToX(idx, w), indexToY(idx, w), stream[i]);
+        }
+        return new EmbedResult(stego, L, null, order);
+    }
+
+    /**
+     * Внедрение STC: L бит потока логотипа в младшие биты с минимальной суммарной ценой изменений
+     * (цены — {@link #stcCosts}); столбцы подматрицы задаются ключом, height — высота решётки.
+     */
+    public static EmbedResult embedStc(BufferedImage cover, int[] logoBits, AdaptiveVariant variant, String key,
+                                       int height) {
+        BufferedImage stego = copyGray(cover);
+        int w = stego.getWidth();
+        int h = stego.getHeight();
+        int L = embedBitLength(w, h, logoBits.length);
+        int[] stream = buildStream(logoBits, L);
+        WritableRaster r = stego.getRaster();
+        int[] px = r.getSamples(0, 0, w, h, 0, (int[]) null);
+        StcEmbedder.embed(px, stcCosts(cover, variant), stream, height, seedFromKey(key));
+        r.setSamples(0, 0, w, h, 0, px);
+        return new EmbedResult(stego, L, null, null);
+    }
+
+    /** Бит ЦВЗ в области ДКП: логотип целиком, если помещается, иначе его начало. */
+    public static int dctBitLength(int w, int h, int logoBits) {
+        return Math.min(logoBits, DctWatermark.capacity(w, h));
+    }
+
+    /**
+     * Внедрение в области ДКП 8×8 ({@link DctWatermark}, QIM по среднечастотным коэффициентам):
+     * переживает JPEG-пережатие; step — шаг квантования, решётка сдвинута от ключа.
+     */
+    public static EmbedResult embedDct(BufferedImage cover, int[] logoBits, String key, double step) {
+        BufferedImage stego = copyGray(cover);
+        int w = stego.getWidth();
+        int h = stego.getHeight();
+        int L = dctBitLength(w, h, logoBits.length);
+        WritableRaster r = stego.getRaster();
+        byte[] px = (byte[]) r.getDataElements(0, 0, w, h, null);
+        DctWatermark.embed(px, w, h, buildStream(logoBits, L), seedFromKey(key), step);
+        r.setDataElements(0, 0, w, h, px);
+        return new EmbedResult(stego, L, null, null);
+    }
+
+    /** Извлечение из области ДКП: нужны ключ, шаг и длина; контейнер не нужен. */
+    public static int[] extractDct(BufferedImage stego, String key, int L, double step) {
+        int w = stego.getWidth();
+        int h = stego.getHeight();
+        byte[] px = (byte[]) toByteGray(stego).getRaster().getDataElements(0, 0, w, h, null);
+        return DctWatermark.extract(px, w, h, L, seedFromKey(key), step);
+    }
+
+    /** Бит ЦВЗ в вейвлет-области (LL и HL уровня levels): логотип целиком или его начало. */
+    public static int dwtBitLength(int w, int h, int logoBits, int levels) {
+        return Math.min(logoBits, DwtWatermark.capacity(w, h, levels));
+    }
+
+    /**
+     * Внедрение в вейвлет-области ({@link DwtWatermark}: лифтинг Хаара или CDF 5/3 на месте,
+     * QIM в LL и HL последнего уровня); решётка сдвинута от ключа.
+     */
+    public static EmbedResult embedDwt(BufferedImage cover, int[] logoBits, String key, double step, int levels,
+                                       DwtWatermark.Wavelet wavelet) {
+        BufferedImage stego = copyGray(cover);
+        int w = stego.getWidth();
+        int h = stego.getHeight();
+        int L = dwtBitLength(w, h, logoBits.length, levels);
+        WritableRaster r = stego.getRaster();
+        byte[] px = (byte[]) r.getDataElements(0, 0, w, h, null);
+        DwtWatermark.embed(px, w, h, buildStream(logoBits, L), seedFromKey(key), step, levels, wavelet);
+        r.setDataElements(0, 0, w, h, px);
+        return new EmbedResult(stego, L, null, null);
+    }
+
+    /** Извлечение из вейвлет-области: нужны ключ, шаг, число уровней, вейвлет и длина. */
+    public static int[] extractDwt(BufferedImage stego, String key, int L, double step, int levels,
+                                   DwtWatermark.Wavelet wavelet) {
+        int w = stego.getWidth();
+        int h = stego.getHeight();
+        byte[] px = (byte[]) toByteGray(stego).getRaster().getDataElements(0, 0, w, h, null);
+        return DwtWatermark.extract(px, w, h, L, seedFromKey(key), step, levels, wavelet);
+    }
+
+    /** Извлечение STC: синдром младших бит; контейнер не нужен. */
+    public static int[] extractStc(BufferedImage stego, String key, int L, int height) {
+        int w = stego.getWidth();
+        int h = stego.getHeight();
+        int[] px = stego.getRaster().getSamples(0, 0, w, h, 0, (int[]) null);
+        return StcEmbedder.extract(px, L, height, seedFromKey(key));
+    }
+
     public static int[] extractKeyLsb(BufferedImage stego, String key, int L) {
         int w = stego.getWidth();
         int h = stego.getHeight();
-        int[] perm = permutationFromKey(w, h, key);
+        KeyedPermutation perm = keyedPermutation(w, h, key);
         WritableRaster r = stego.getRaster();
         int[] bits = new int[L];
         for (int i = 0; i < L; i++) {
-            int idx = perm[i];
+            int idx = perm.get(i);
             bits[i] = getLsb(r, indexToX(idx, w), indexToY(idx, w));
         }
         return bits;
@@ -331,7 +592,28 @@ public final class WatermarkEngine {
 
     public static int[] extractAdaptive(BufferedImage cover, BufferedImage stego, int L, AdaptiveVariant variant) {
         int w = stego.getWidth();
-        int[] order = adaptiveEmbeddingOrder(cover, variant);
+        int[] order = cachedAdaptiveOrder(cover, variant);
+        WritableRaster r = stego.getRaster();
+        int[] bits = new int[L];
+        for (int i = 0; i < L; i++) {
+            int idx = order[i];
+            bits[i] = getLsb(r, indexToX(idx, w), indexToY(idx, w));
+        }
+        return bits;
+    }
+
+    /** Слепое извлечение: порядок строится по самому стего (нужны только вариант и длина). */
+    public static int[] extractAdaptiveBlind(BufferedImage stego, int L, AdaptiveVariant variant) {
+        return extractAdaptiveBlind(stego, L, variant, true);
+    }
+
+    /**
+     * Слепое извлечение; при cache = false порядок не кладётся в кэш — для стего, которое больше
+     * не встретится (например, после атаки): иначе каждое такое изображение вытесняет порядки контейнеров.
+     */
+    public static int[] extractAdaptiveBlind(BufferedImage stego, int L, AdaptiveVariant variant, boolean cache) {
+        int w = stego.getWidth();
+        int[] order = cache ? blindAdaptiveOrder(stego, variant) : blindAdaptiveOrderUncached(stego, variant);
         WritableRaster r = stego.getRaster();
         int[] bits = new int[L];
         for (int i = 0; i < L; i++) {
@@ -392,11 +674,11 @@ public final class WatermarkEngine {
     public static final class EmbedResult {
         public final BufferedImage stego;
         public final int bitLength;
-        public final int[] keyPermutation;
-        /** Порядок пикселей при адаптивном внедрении (null для LSB по ключу). */
+        public final KeyedPermutation keyPermutation;
+        /** Порядок пикселей при адаптивном внедрении (null для LSB по ключу); общий с кэшем, не изменять. */
         public final int[] adaptiveOrder;
 
-        EmbedResult(BufferedImage stego, int bitLength, int[] keyPermutation, int[] adaptiveOrder) {
+        EmbedResult(BufferedImage stego, int bitLength, KeyedPermutation keyPermutation, int[] adaptiveOrder) {
             this.stego = stego;
             this.bitLength = bitLength;
             this.keyPermutation = keyPermutation;
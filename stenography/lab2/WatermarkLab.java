@@ -6,7 +6,8 @@ import java.util.Scanner;
 import javax.imageio.ImageIO;
 
 /**
- * Задание 2: ЦВЗ — LSB с ключом; адаптивно (градиент / дисперсия / контраст); извлечение и PSNR.
+ * Задание 2: ЦВЗ — LSB с ключом; адаптивно (градиент / дисперсия / контраст); STC с ценами
+ * из адаптивного критерия; извлечение и PSNR.
  */
 public final class WatermarkLab {
 
@@ -18,15 +19,23 @@ public final class WatermarkLab {
             System.out.println("3 — извлечь (LSB + ключ)");
             System.out.println("4 — извлечь (адаптивно, нужен исходный контейнер + тот же вариант)");
             System.out.println("5 — PSNR: контейнер vs стего");
-            System.out.print("Режим (1-5): ");
-            int mode = readIntLine(sc, "ожидалось число 1..5");
+            System.out.println("6 — внедрить (STC: минимум искажений, цены из адаптивного критерия)");
+            System.out.println("7 — извлечь (STC, нужен только ключ)");
+            System.out.println("8 — внедрить (адаптивно вслепую: критерий по плоскостям 2–8)");
+            System.out.println("9 — извлечь (адаптивно вслепую, исходный контейнер не нужен)");
+            System.out.println("10 — внедрить (ДКП 8×8, QIM: устойчиво к JPEG)");
+            System.out.println("11 — извлечь (ДКП 8×8, нужны ключ и шаг)");
+            System.out.println("12 — внедрить (вейвлеты: лифтинг Хаара / CDF 5/3, QIM в LL и HL)");
+            System.out.println("13 — извлечь (вейвлеты, нужны ключ, вейвлет, уровни и шаг)");
+            System.out.print("Режим (1-13): ");
+            int mode = readIntLine(sc, "ожидалось число 1..13");
 
             switch (mode) {
                 case 1:
                     runEmbedKey(sc);
                     break;
                 case 2:
-                    runEmbedAdaptive(sc);
+                    runEmbedAdaptive(sc, false);
                     break;
                 case 3:
                     runExtractKey(sc);
@@ -37,6 +46,30 @@ public final class WatermarkLab {
                 case 5:
                     runPsnr(sc);
                     break;
+                case 6:
+                    runEmbedStc(sc);
+                    break;
+                case 7:
+                    runExtractStc(sc);
+                    break;
+                case 8:
+                    runEmbedAdaptive(sc, true);
+                    break;
+                case 9:
+                    runExtractAdaptiveBlind(sc);
+                    break;
+                case 10:
+                    runEmbedDct(sc);
+                    break;
+                case 11:
+                    runExtractDct(sc);
+                    break;
+                case 12:
+                    runEmbedDwt(sc);
+                    break;
+                case 13:
+                    runExtractDwt(sc);
+                    break;
                 default:
                     System.out.println("Неизвестный режим.");
             }
@@ -78,7 +111,7 @@ public final class WatermarkLab {
         int[] bits = WatermarkEngine.linearizeLogoBits(logoBin);
 
         WatermarkEngine.EmbedResult res = WatermarkEngine.embedKeyLsb(cover, bits, key);
-        ImageIO.write(res.stego, "bmp", new File(outPath));
+        BmpFile.write(res.stego, new File(outPath).toPath());
         double psnr = WatermarkEngine.psnr(cover, res.stego);
         System.out.println("Внедрено бит: " + res.bitLength + " (ёмкость плоскости " + cover.getWidth() * cover.getHeight()
                 + ", логотип " + logoBin.getWidth() + "×" + logoBin.getHeight() + " = " + bits.length + " бит)");
@@ -87,7 +120,7 @@ public final class WatermarkLab {
         System.out.println("Для извлечения укажите те же размеры логотипа: " + logoBin.getWidth() + " " + logoBin.getHeight());
     }
 
-    private static void runEmbedAdaptive(Scanner sc) throws IOException {
+    private static void runEmbedAdaptive(Scanner sc, boolean blind) throws IOException {
         System.out.print("Путь к контейнеру (BMP/PNG): ");
         String coverPath = sc.nextLine().trim();
         System.out.print("Путь к логотипу (изображение): ");
@@ -102,10 +135,12 @@ public final class WatermarkLab {
         BufferedImage logoBin = WatermarkEngine.binarizeLogo(logoRaw);
         int[] bits = WatermarkEngine.linearizeLogoBits(logoBin);
 
-        WatermarkEngine.EmbedResult res = WatermarkEngine.embedAdaptive(cover, bits, variant);
-        ImageIO.write(res.stego, "bmp", new File(outPath));
+        WatermarkEngine.EmbedResult res = blind
+                ? WatermarkEngine.embedAdaptiveBlind(cover, bits, variant)
+                : WatermarkEngine.embedAdaptive(cover, bits, variant);
+        BmpFile.write(res.stego, new File(outPath).toPath());
         double psnr = WatermarkEngine.psnr(cover, res.stego);
-        System.out.println("Вариант: " + variant);
+        System.out.println("Вариант: " + variant + (blind ? " (вслепую, плоскости 2–8)" : ""));
         System.out.println("Внедрено бит: " + res.bitLength);
         System.out.println("PSNR(контейнер, стего) = " + String.format("%.4f", psnr) + " дБ");
         System.out.println("Сохранено: " + outPath);
@@ -187,6 +222,257 @@ public final class WatermarkLab {
         System.out.println("Сохранено: " + outPath);
     }
 
+    private static void runExtractAdaptiveBlind(Scanner sc) throws IOException {
+        System.out.print("Путь к стего BMP: ");
+        String stegoPath = sc.nextLine().trim();
+        WatermarkEngine.AdaptiveVariant variant = readAdaptiveVariant(sc);
+        System.out.print("Ширина логотипа (px): ");
+        int lw = readIntLine(sc, "нужна ширина в пикселях");
+        System.out.print("Высота логотипа (px): ");
+        int lh = readIntLine(sc, "нужна высота в пикселях");
+        System.out.print("Выходной BMP: ");
+        String outPath = sc.nextLine().trim();
+        System.out.print("Эталонный логотип для сравнения (Enter — пропустить): ");
+        String refPath = sc.nextLine().trim();
+
+        BufferedImage stego = WatermarkEngine.readImage(new File(stegoPath));
+        int L = WatermarkEngine.embedBitLength(stego.getWidth(), stego.getHeight(), lw * lh);
+        int[] bits = WatermarkEngine.extractAdaptiveBlind(stego, L, variant);
+        ImageIO.write(WatermarkEngine.bitsToLogoBitmap(bits, lw, lh), "bmp", new File(outPath));
+
+        System.out.println("Вариант: " + variant + " (вслепую, плоскости 2–8)");
+        if (!refPath.isEmpty()) {
+            BufferedImage ref = WatermarkEngine.binarizeLogo(WatermarkEngine.readImage(new File(refPath)));
+            int[] refBits = WatermarkEngine.linearizeLogoBits(ref);
+            int n = Math.min(lw * lh, Math.min(bits.length, refBits.length));
+            int err = WatermarkEngine.bitErrors(bits, refBits, n);
+            System.out.println("Ошибок по битам: " + err + " из " + (lw * lh));
+        }
+        System.out.println("Сохранено: " + outPath);
+    }
+
+    private static void runEmbedStc(Scanner sc) throws IOException {
+        System.out.print("Путь к контейнеру (BMP/PNG): ");
+        String coverPath = sc.nextLine().trim();
+        System.out.print("Путь к логотипу (изображение): ");
+        String logoPath = sc.nextLine().trim();
+        WatermarkEngine.AdaptiveVariant variant = readAdaptiveVariant(sc);
+        System.out.print("Секретный ключ (строка): ");
+        String key = sc.nextLine();
+        int height = readStcHeight(sc);
+        System.out.print("Выходной BMP (например lab2_stego_stc.bmp): ");
+        String outPath = sc.nextLine().trim();
+
+        BufferedImage cover = WatermarkEngine.readImage(new File(coverPath));
+        BufferedImage logoRaw = WatermarkEngine.readImage(new File(logoPath));
+        logoRaw = WatermarkEngine.scaleIfNeeded(logoRaw, cover.getWidth() * cover.getHeight());
+        BufferedImage logoBin = WatermarkEngine.binarizeLogo(logoRaw);
+        int[] bits = WatermarkEngine.linearizeLogoBits(logoBin);
+
+        long t0 = System.nanoTime();
+        WatermarkEngine.EmbedResult res = WatermarkEngine.embedStc(cover, bits, variant, key, height);
+        double ms = (System.nanoTime() - t0) / 1e6;
+        BmpFile.write(res.stego, new File(outPath).toPath());
+        double psnr = WatermarkEngine.psnr(cover, res.stego);
+        System.out.println("Вариант цен: " + variant + ", высота решётки h = " + height);
+        System.out.println("Внедрено бит: " + res.bitLength + ", изменено пикселей: "
+                + WatermarkEngine.bitErrors(lsb(cover), lsb(res.stego), cover.getWidth() * cover.getHeight())
+                + ", время внедрения " + String.format("%.1f", ms) + " мс");
+        System.out.println("PSNR(контейнер, стего) = " + String.format("%.4f", psnr) + " дБ");
+        System.out.println("Сохранено: " + outPath);
+        System.out.println("Размеры логотипа для проверки: " + logoBin.getWidth() + " " + logoBin.getHeight());
+    }
+
+    private static void runExtractStc(Scanner sc) throws IOException {
+        System.out.print("Путь к стего BMP: ");
+        String stegoPath = sc.nextLine().trim();
+        System.out.print("Секретный ключ: ");
+        String key = sc.nextLine();
+        int height = readStcHeight(sc);
+        System.out.print("Ширина логотипа (px): ");
+        int lw = readIntLine(sc, "нужна ширина в пикселях");
+        System.out.print("Высота логотипа (px): ");
+        int lh = readIntLine(sc, "нужна высота в пикселях");
+        System.out.print("Выходной BMP: ");
+        String outPath = sc.nextLine().trim();
+
+        BufferedImage stego = WatermarkEngine.readImage(new File(stegoPath));
+        int L = WatermarkEngine.embedBitLength(stego.getWidth(), stego.getHeight(), lw * lh);
+        int[] bits = WatermarkEngine.extractStc(stego, key, L, height);
+        ImageIO.write(WatermarkEngine.bitsToLogoBitmap(bits, lw, lh), "bmp", new File(outPath));
+        System.out.println("Сохранено: " + outPath);
+    }
+
+    private static void runEmbedDct(Scanner sc) throws IOException {
+        System.out.print("Путь к контейнеру (BMP/PNG): ");
+        String coverPath = sc.nextLine().trim();
+        System.out.print("Путь к логотипу (изображение): ");
+        String logoPath = sc.nextLine().trim();
+        System.out.print("Секретный ключ (строка): ");
+        String key = sc.nextLine();
+        double step = readQimStep(sc, DctWatermark.DEFAULT_STEP);
+        System.out.print("Выходной BMP (например lab2_stego_dct.bmp): ");
+        String outPath = sc.nextLine().trim();
+
+        BufferedImage cover = WatermarkEngine.readImage(new File(coverPath));
+        BufferedImage logoRaw = WatermarkEngine.readImage(new File(logoPath));
+        logoRaw = WatermarkEngine.scaleIfNeeded(logoRaw, DctWatermark.capacity(cover.getWidth(), cover.getHeight()));
+        BufferedImage logoBin = WatermarkEngine.binarizeLogo(logoRaw);
+        int[] bits = WatermarkEngine.linearizeLogoBits(logoBin);
+
+        long t0 = System.nanoTime();
+        WatermarkEngine.EmbedResult res = WatermarkEngine.embedDct(cover, bits, key, step);
+        double ms = (System.nanoTime() - t0) / 1e6;
+        BmpFile.write(res.stego, new File(outPath).toPath());
+        double psnr = WatermarkEngine.psnr(cover, res.stego);
+        System.out.println("Шаг QIM: " + step + ", внедрено бит: " + res.bitLength + " (ёмкость "
+                + DctWatermark.capacity(cover.getWidth(), cover.getHeight()) + "), время внедрения "
+                + String.format("%.1f", ms) + " мс");
+        System.out.println("PSNR(контейнер, стего) = " + String.format("%.4f", psnr) + " дБ");
+        System.out.println("Сохранено: " + outPath);
+        System.out.println("Размеры логотипа для проверки: " + logoBin.getWidth() + " " + logoBin.getHeight());
+    }
+
+    private static void runExtractDct(Scanner sc) throws IOException {
+        System.out.print("Путь к стего (BMP/PNG/JPEG): ");
+        String stegoPath = sc.nextLine().trim();
+        System.out.print("Секретный ключ: ");
+        String key = sc.nextLine();
+        double step = readQimStep(sc, DctWatermark.DEFAULT_STEP);
+        System.out.print("Ширина логотипа (px): ");
+        int lw = readIntLine(sc, "нужна ширина в пикселях");
+        System.out.print("Высота логотипа (px): ");
+        int lh = readIntLine(sc, "нужна высота в пикселях");
+        System.out.print("Выходной BMP: ");
+        String outPath = sc.nextLine().trim();
+
+        BufferedImage stego = WatermarkEngine.readImage(new File(stegoPath));
+        int L = WatermarkEngine.dctBitLength(stego.getWidth(), stego.getHeight(), lw * lh);
+        int[] bits = WatermarkEngine.extractDct(stego, key, L, step);
+        ImageIO.write(WatermarkEngine.bitsToLogoBitmap(bits, lw, lh), "bmp", new File(outPath));
+        System.out.println("Сохранено: " + outPath);
+    }
+
+    private static void runEmbedDwt(Scanner sc) throws IOException {
+        System.out.print("Путь к контейнеру (BMP/PNG): ");
+        String coverPath = sc.nextLine().trim();
+        System.out.print("Путь к логотипу (изображение): ");
+        String logoPath = sc.nextLine().trim();
+        System.out.print("Секретный ключ (строка): ");
+        String key = sc.nextLine();
+        DwtWatermark.Wavelet wavelet = readWavelet(sc);
+        int levels = readDwtLevels(sc);
+        double step = readQimStep(sc, DwtWatermark.DEFAULT_STEP);
+        System.out.print("Выходной BMP (например lab2_stego_dwt.bmp): ");
+        String outPath = sc.nextLine().trim();
+
+        BufferedImage cover = WatermarkEngine.readImage(new File(coverPath));
+        BufferedImage logoRaw = WatermarkEngine.readImage(new File(logoPath));
+        int capacity = DwtWatermark.capacity(cover.getWidth(), cover.getHeight(), levels);
+        logoRaw = WatermarkEngine.scaleIfNeeded(logoRaw, capacity);
+        BufferedImage logoBin = WatermarkEngine.binarizeLogo(logoRaw);
+        int[] bits = WatermarkEngine.linearizeLogoBits(logoBin);
+
+        long t0 = System.nanoTime();
+        WatermarkEngine.EmbedResult res = WatermarkEngine.embedDwt(cover, bits, key, step, levels, wavelet);
+        double ms = (System.nanoTime() - t0) / 1e6;
+        BmpFile.write(res.stego, new File(outPath).toPath());
+        double psnr = WatermarkEngine.psnr(cover, res.stego);
+        System.out.println("Вейвлет: " + wavelet + ", уровней: " + levels + ", шаг QIM: " + step
+                + ", внедрено бит: " + res.bitLength + " (ёмкость " + capacity + "), время внедрения "
+                + String.format("%.1f", ms) + " мс");
+        System.out.println("PSNR(контейнер, стего) = " + String.format("%.4f", psnr) + " дБ");
+        System.out.println("Сохранено: " + outPath);
+        System.out.println("Размеры логотипа для проверки: " + logoBin.getWidth() + " " + logoBin.getHeight());
+    }
+
+    private static void runExtractDwt(Scanner sc) throws IOException {
+        System.out.print("Путь к стего (BMP/PNG/JPEG): ");
+        String stegoPath = sc.nextLine().trim();
+        System.out.print("Секретный ключ: ");
+        String key = sc.nextLine();
+        DwtWatermark.Wavelet wavelet = readWavelet(sc);
+        int levels = readDwtLevels(sc);
+        double step = readQimStep(sc, DwtWatermark.DEFAULT_STEP);
+        System.out.print("Ширина логотипа (px): ");
+        int lw = readIntLine(sc, "нужна ширина в пикселях");
+        System.out.print("Высота логотипа (px): ");
+        int lh = readIntLine(sc, "нужна высота в пикселях");
+        System.out.print("Выходной BMP: ");
+        String outPath = sc.nextLine().trim();
+
+        BufferedImage stego = WatermarkEngine.readImage(new File(stegoPath));
+        int L = WatermarkEngine.dwtBitLength(stego.getWidth(), stego.getHeight(), lw * lh, levels);
+        int[] bits = WatermarkEngine.extractDwt(stego, key, L, step, levels, wavelet);
+        ImageIO.write(WatermarkEngine.bitsToLogoBitmap(bits, lw, lh), "bmp", new File(outPath));
+        System.out.println("Сохранено: " + outPath);
+    }
+
+    private static DwtWatermark.Wavelet readWavelet(Scanner sc) throws IOException {
+        System.out.print("Вейвлет: 1 — Хаар, 2 — CDF 5/3 (Enter — 2): ");
+        String line = sc.nextLine().trim();
+        if (line.isEmpty() || "2".equals(line)) {
+            return DwtWatermark.Wavelet.CDF53;
+        }
+        if ("1".equals(line)) {
+            return DwtWatermark.Wavelet.HAAR;
+        }
+        throw new IOException("нужно 1 или 2, получено: " + line);
+    }
+
+    private static int readDwtLevels(Scanner sc) throws IOException {
+        System.out.print("Уровней разложения (1-" + DwtWatermark.MAX_LEVELS + ", Enter — "
+                + DwtWatermark.DEFAULT_LEVELS + "): ");
+        String line = sc.nextLine().trim();
+        if (line.isEmpty()) {
+            return DwtWatermark.DEFAULT_LEVELS;
+        }
+        try {
+            return Integer.parseInt(line);
+        } catch (NumberFormatException e) {
+            throw new IOException("нужно число уровней 1.." + DwtWatermark.MAX_LEVELS + ", получено: " + line);
+        }
+    }
+
+    private static double readQimStep(Scanner sc, double defaultStep) throws IOException {
+        System.out.print("Шаг QIM (Enter — " + defaultStep + "; больше — устойчивее к JPEG, ниже PSNR): ");
+        String line = sc.nextLine().trim();
+        if (line.isEmpty()) {
+            return defaultStep;
+        }
+        try {
+            double step = Double.parseDouble(line);
+            if (!(step > 0)) {
+                throw new NumberFormatException();
+            }
+            return step;
+        } catch (NumberFormatException e) {
+            throw new IOException("нужен положительный шаг, получено: " + line);
+        }
+    }
+
+    private static int readStcHeight(Scanner sc) throws IOException {
+        System.out.print("Высота решётки STC h (1-" + StcEmbedder.MAX_HEIGHT + ", Enter — "
+                + StcEmbedder.DEFAULT_HEIGHT + "): ");
+        String line = sc.nextLine().trim();
+        if (line.isEmpty()) {
+            return StcEmbedder.DEFAULT_HEIGHT;
+        }
+        try {
+            return Integer.parseInt(line);
+        } catch (NumberFormatException e) {
+            throw new IOException("нужна высота 1.." + StcEmbedder.MAX_HEIGHT + ", получено: " + line);
+        }
+    }
+
+    private static int[] lsb(BufferedImage img) {
+        int[] s = img.getRaster().getSamples(0, 0, img.getWidth(), img.getHeight(), 0, (int[]) null);
+        for (int i = 0; i < s.length; i++) {
+            s[i] &= 1;
+        }
+        return s;
+    }
+
     private static void runPsnr(Scanner sc) throws IOException {
         System.out.print("Путь к исходному контейнеру: ");
         String aPath = sc.nextLine().trim();
@@ -21,7 +21,9 @@ import javax.imageio.ImageIO;
 /**
  * Пакетная исследовательская часть для задания 2.
  * Генерирует один и тот же бинарный логотип, внедряет его в изображения трех наборов
- * двумя подходами и сохраняет PSNR + проверку извлечения в CSV.
+ * несколькими подходами (LSB по ключу, адаптивно, адаптивно вслепую, ДКП и вейвлеты с QIM) и сохраняет PSNR + проверку извлечения в CSV.
+ * Затем каждый стегоконтейнер проходит сетку атак {@link WatermarkAttacks} (независимые задачи в ForkJoinPool),
+ * после каждой ЦВЗ извлекается заново, BER по атакам пишется в отдельные CSV.
  */
 public final class WatermarkResearch {
 
@@ -56,6 +58,7 @@ public final class WatermarkResearch {
         Path methodSummaryCsv = outRoot.resolve("watermark_summary.csv");
         Path summaryCsv = outRoot.resolve("dataset_summary.csv");
         Map<String, Aggregate> aggregates = new LinkedHashMap<>();
+        List<StegoCase> cases = new ArrayList<>();
         try (BufferedWriter metrics = Files.newBufferedWriter(metricsCsv, StandardCharsets.UTF_8);
              BufferedWriter summary = Files.newBufferedWriter(summaryCsv, StandardCharsets.UTF_8)) {
             metrics.write("set;image;method;adaptive_variant;embedded_bits;capacity_bits;payload_ratio;PSNR_dB;bit_errors;checked_bits;ber_percent;stego_file;extracted_logo");
@@ -79,36 +82,68 @@ public final class WatermarkResearch {
                 for (String imageName : spec.images) {
                     BufferedImage cover = WatermarkEngine.readImage(spec.dir.resolve(imageName).toFile());
                     MethodStats lsbStats = writeMethodResult(metrics, spec.name, imageName, "LSB_KEY", null,
-                            cover, logoBits, stegoOut, extractedOut);
+                            cover, logoBits, stegoOut, extractedOut, cases);
                     addAggregate(aggregates, spec.name, "LSB_KEY", "-", lsbStats);
                     MethodStats adaptiveStats = writeMethodResult(metrics, spec.name, imageName, "ADAPTIVE",
-                            adaptiveVariant, cover, logoBits, stegoOut, extractedOut);
+                            adaptiveVariant, cover, logoBits, stegoOut, extractedOut, cases);
                     addAggregate(aggregates, spec.name, "ADAPTIVE", adaptiveVariant.name(), adaptiveStats);
+                    MethodStats blindStats = writeMethodResult(metrics, spec.name, imageName, "ADAPTIVE_BLIND",
+                            adaptiveVariant, cover, logoBits, stegoOut, extractedOut, cases);
+                    addAggregate(aggregates, spec.name, "ADAPTIVE_BLIND", adaptiveVariant.name(), blindStats);
+                    MethodStats dctStats = writeMethodResult(metrics, spec.name, imageName, "DCT_QIM", null,
+                            cover, logoBits, stegoOut, extractedOut, cases);
+                    addAggregate(aggregates, spec.name, "DCT_QIM", "-", dctStats);
+                    for (String dwt : List.of("DWT_HAAR", "DWT_CDF53")) {
+                        MethodStats dwtStats = writeMethodResult(metrics, spec.name, imageName, dwt, null,
+                                cover, logoBits, stegoOut, extractedOut, cases);
+                        addAggregate(aggregates, spec.name, dwt, "-", dwtStats);
+                    }
                 }
             }
         }
         writeAggregates(methodSummaryCsv, aggregates);
+        runAttacks(outRoot, cases, logoBits);
 
         System.out.println("Готово: " + outRoot.toAbsolutePath());
         System.out.println("Логотип: " + logoPath);
-        System.out.println("Таблицы: watermark_metrics.csv, watermark_summary.csv, dataset_summary.csv");
+        System.out.println("Таблицы: watermark_metrics.csv, watermark_summary.csv, dataset_summary.csv,"
+                + " watermark_attacks.csv, watermark_attack_summary.csv");
+        System.out.println(WatermarkEngine.cacheStats());
     }
 
     private static MethodStats writeMethodResult(BufferedWriter metrics, String setName, String imageName, String method,
                                                  WatermarkEngine.AdaptiveVariant variant, BufferedImage cover,
-                                                 int[] logoBits, Path stegoOut, Path extractedOut) throws IOException {
+                                                 int[] logoBits, Path stegoOut, Path extractedOut,
+                                                 List<StegoCase> cases) throws IOException {
         WatermarkEngine.EmbedResult embed;
-        int[] extractedBits;
         String suffix;
-        if ("LSB_KEY".equals(method)) {
-            embed = WatermarkEngine.embedKeyLsb(cover, logoBits, KEY);
-            extractedBits = WatermarkEngine.extractKeyLsb(embed.stego, KEY, embed.bitLength);
-            suffix = "lsb";
-        } else {
-            embed = WatermarkEngine.embedAdaptive(cover, logoBits, variant);
-            extractedBits = WatermarkEngine.extractAdaptive(cover, embed.stego, embed.bitLength, variant);
-            suffix = "adaptive_" + variant.name().toLowerCase(Locale.ROOT);
+        switch (method) {
+            case "LSB_KEY":
+                embed = WatermarkEngine.embedKeyLsb(cover, logoBits, KEY);
+                suffix = "lsb";
+                break;
+            case "DCT_QIM":
+                // ёмкость ДКП меньше логотипа: проверяется его начало (embed.bitLength бит)
+                embed = WatermarkEngine.embedDct(cover, logoBits, KEY, DctWatermark.DEFAULT_STEP);
+                suffix = "dct";
+                break;
+            case "DWT_HAAR":
+            case "DWT_CDF53":
+                embed = WatermarkEngine.embedDwt(cover, logoBits, KEY, DwtWatermark.DEFAULT_STEP,
+                        DwtWatermark.DEFAULT_LEVELS, wavelet(method));
+                suffix = "dwt_" + wavelet(method).name().toLowerCase(Locale.ROOT);
+                break;
+            case "ADAPTIVE_BLIND":
+                embed = WatermarkEngine.embedAdaptiveBlind(cover, logoBits, variant);
+                suffix = "blind_" + variant.name().toLowerCase(Locale.ROOT);
+                break;
+            default:
+                embed = WatermarkEngine.embedAdaptive(cover, logoBits, variant);
+                suffix = "adaptive_" + variant.name().toLowerCase(Locale.ROOT);
+                break;
         }
+        int[] extractedBits = extractBits(method, variant, cover, embed.stego, embed.bitLength, true);
+        cases.add(new StegoCase(setName, imageName, method, variant, cover, embed.stego, embed.bitLength));
 
         int checkedBits = Math.min(logoBits.length, extractedBits.length);
         int errors = WatermarkEngine.bitErrors(extractedBits, logoBits, checkedBits);
@@ -120,7 +155,7 @@ public final class WatermarkResearch {
         String base = safeName(baseName(imageName));
         String stegoName = base + "_" + suffix + "_stego.bmp";
         String extractedName = base + "_" + suffix + "_logo.bmp";
-        ImageIO.write(embed.stego, "bmp", stegoOut.resolve(stegoName).toFile());
+        BmpFile.write(embed.stego, stegoOut.resolve(stegoName));
         ImageIO.write(WatermarkEngine.bitsToLogoBitmap(extractedBits, LOGO_W, LOGO_H),
                 "bmp", extractedOut.resolve(extractedName).toFile());
 
@@ -132,6 +167,89 @@ public final class WatermarkResearch {
         return new MethodStats(psnr, ber);
     }
 
+    /**
+     * Извлечение тем же методом, что и внедрение; для ADAPTIVE нужен исходный контейнер.
+     * cache = false — стего разовое (атакованное), слепой порядок по нему не кэшируется.
+     */
+    private static int[] extractBits(String method, WatermarkEngine.AdaptiveVariant variant, BufferedImage cover,
+                                     BufferedImage stego, int bitLength, boolean cache) {
+        switch (method) {
+            case "LSB_KEY":
+                return WatermarkEngine.extractKeyLsb(stego, KEY, bitLength);
+            case "DCT_QIM":
+                return WatermarkEngine.extractDct(stego, KEY, bitLength, DctWatermark.DEFAULT_STEP);
+            case "DWT_HAAR":
+            case "DWT_CDF53":
+                return WatermarkEngine.extractDwt(stego, KEY, bitLength, DwtWatermark.DEFAULT_STEP,
+                        DwtWatermark.DEFAULT_LEVELS, wavelet(method));
+            case "ADAPTIVE_BLIND":
+                // извлечение только по стего: порядок из плоскостей 2–8
+                return WatermarkEngine.extractAdaptiveBlind(stego, bitLength, variant, cache);
+            default:
+                return WatermarkEngine.extractAdaptive(cover, stego, bitLength, variant);
+        }
+    }
+
+    private static DwtWatermark.Wavelet wavelet(String method) {
+        return "DWT_HAAR".equals(method) ? DwtWatermark.Wavelet.HAAR : DwtWatermark.Wavelet.CDF53;
+    }
+
+    /**
+     * Сетка атак по всем стегоконтейнерам: каждая пара (контейнер, атака) — независимая задача,
+     * результаты складываются в массив по индексу и пишутся в CSV в исходном порядке.
+     * Случайные атаки зависят только от изображения и атаки, поэтому все методы получают один и тот же шум.
+     */
+    private static void runAttacks(Path outRoot, List<StegoCase> cases, int[] logoBits) throws IOException {
+        List<WatermarkAttacks.Attack> grid = WatermarkAttacks.defaultGrid();
+        int attacks = grid.size();
+        int[] errors = new int[cases.size() * attacks];
+        double[] psnr = new double[errors.length];
+        long t0 = System.nanoTime();
+        WatermarkAttacks.forEachTask(errors.length, cell -> {
+            StegoCase c = cases.get(cell / attacks);
+            int a = cell % attacks;
+            long seed = WatermarkEngine.seedFromKey(KEY + "/" + c.set + "/" + c.image + "/" + a);
+            byte[] attacked = grid.get(a).apply(c.pixels, c.width, c.height, seed);
+            BufferedImage img = WatermarkAttacks.toImage(attacked, c.width, c.height);
+            int[] bits = extractBits(c.method, c.variant, c.cover, img, c.bitLength, false);
+            errors[cell] = WatermarkEngine.bitErrors(bits, logoBits, c.checkedBits(logoBits));
+            psnr[cell] = WatermarkAttacks.psnr(c.pixels, attacked);
+        });
+        System.out.println(String.format(Locale.ROOT, "Атаки: %d задач за %.1f с",
+                errors.length, (System.nanoTime() - t0) / 1e9));
+
+        Map<String, Aggregate> aggregates = new LinkedHashMap<>();
+        try (BufferedWriter out = Files.newBufferedWriter(outRoot.resolve("watermark_attacks.csv"),
+                StandardCharsets.UTF_8)) {
+            out.write("set;image;method;adaptive_variant;attack;param;attack_PSNR_dB;bit_errors;checked_bits;ber_percent");
+            out.newLine();
+            for (int cell = 0; cell < errors.length; cell++) {
+                StegoCase c = cases.get(cell / attacks);
+                WatermarkAttacks.Attack attack = grid.get(cell % attacks);
+                int checked = c.checkedBits(logoBits);
+                double ber = checked == 0 ? 0.0 : 100.0 * errors[cell] / checked;
+                String variant = c.variant == null ? "-" : c.variant.name();
+                out.write(String.format(Locale.ROOT, "%s;%s;%s;%s;%s;%s;%.6f;%d;%d;%.6f",
+                        c.set, c.image, c.method, variant, attack.kind, attack.paramText(),
+                        psnr[cell], errors[cell], checked, ber));
+                out.newLine();
+                addAggregate(aggregates, c.set, c.method, attack.kind + ";" + attack.paramText(),
+                        new MethodStats(psnr[cell], ber));
+            }
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(outRoot.resolve("watermark_attack_summary.csv"),
+                StandardCharsets.UTF_8)) {
+            out.write("set;method;attack;param;images;avg_attack_PSNR_dB;avg_BER_percent;max_BER_percent");
+            out.newLine();
+            for (Aggregate aggregate : aggregates.values()) {
+                out.write(String.format(Locale.ROOT, "%s;%s;%s;%d;%.6f;%.6f;%.6f",
+                        aggregate.set, aggregate.method, aggregate.variant, aggregate.count,
+                        aggregate.psnrSum / aggregate.count, aggregate.berSum / aggregate.count, aggregate.berMax));
+                out.newLine();
+            }
+        }
+    }
+
     private static int validateSet(SetSpec spec) throws IOException {
         if (!Files.isDirectory(spec.dir)) {
             throw new IOException("Нет каталога набора: " + spec.dir);
@@ -250,6 +368,36 @@ public final class WatermarkResearch {
         }
     }
 
+    /** Стегоконтейнер для сетки атак: яркости снимаются один раз, атаки работают с копиями. */
+    private static final class StegoCase {
+        final String set;
+        final String image;
+        final String method;
+        final WatermarkEngine.AdaptiveVariant variant;
+        final BufferedImage cover;
+        final byte[] pixels;
+        final int width;
+        final int height;
+        final int bitLength;
+
+        StegoCase(String set, String image, String method, WatermarkEngine.AdaptiveVariant variant,
+                  BufferedImage cover, BufferedImage stego, int bitLength) {
+            this.set = set;
+            this.image = image;
+            this.method = method;
+            this.variant = variant;
+            this.cover = cover;
+            this.width = stego.getWidth();
+            this.height = stego.getHeight();
+            this.pixels = (byte[]) stego.getRaster().getDataElements(0, 0, width, height, null);
+            this.bitLength = bitLength;
+        }
+
+        int checkedBits(int[] logoBits) {
+            return Math.min(logoBits.length, bitLength);
+        }
+    }
+
     private static final class MethodStats {
         final double psnr;
         final double ber;
@@ -269,6 +417,7 @@ public final class WatermarkResearch {
         double psnrMin = Double.POSITIVE_INFINITY;
         double psnrMax = Double.NEGATIVE_INFINITY;
         double berSum;
+        double berMax;
 
         Aggregate(String set, String method, String variant) {
             this.set = set;
@@ -282,6 +431,7 @@ public final class WatermarkResearch {
             psnrMin = Math.min(psnrMin, stats.psnr);
             psnrMax = Math.max(psnrMax, stats.psnr);
             berSum += stats.ber;
+            berMax = Math.max(berMax, stats.ber);
         }
     }
 }
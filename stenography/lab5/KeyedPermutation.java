@@ -0,0 +1,76 @@
+import java.util.SplittableRandom;
+
+/**
+ * Ключевая перестановка индексов 0..n-1, вычисляемая по требованию: perm(i) — шифр Фейстеля
+ * (6 раундов) над областью 2^(2k) ≥ n с обходом цикла (значения ≥ n шифруются повторно, пока
+ * не попадут в область; в среднем меньше 4 шагов). Память O(1), один индекс — O(1): чтобы
+ * использовать первые L позиций, не нужно строить и перемешивать массив W×H.
+ */
+public final class KeyedPermutation {
+
+    private static final int ROUNDS = 6;
+
+    private final int n;
+    private final int halfBits;
+    private final int halfMask;
+    private final long[] roundKeys;
+
+    public KeyedPermutation(int n, long seed) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+        int bits = Math.max(2, 32 - Integer.numberOfLeadingZeros(n - 1));
+        bits += bits & 1;
+        this.n = n;
+        this.halfBits = bits / 2;
+        this.halfMask = (1 << halfBits) - 1;
+        this.roundKeys = new long[ROUNDS];
+        SplittableRandom rnd = new SplittableRandom(seed);
+        for (int i = 0; i < ROUNDS; i++) {
+            roundKeys[i] = rnd.nextLong();
+        }
+    }
+
+    public int size() {
+        return n;
+    }
+
+    /** i-й элемент перестановки. */
+    public int get(int i) {
+        if (i < 0 || i >= n) {
+            throw new IndexOutOfBoundsException("index " + i + " out of 0.." + (n - 1));
+        }
+        int x = i;
+        do {
+            x = encrypt(x);
+        } while (x >= n);
+        return x;
+    }
+
+    /** Первые m элементов перестановки. */
+    public int[] prefix(int m) {
+        int[] p = new int[m];
+        for (int i = 0; i < m; i++) {
+            p[i] = get(i);
+        }
+        return p;
+    }
+
+    private int encrypt(int x) {
+        int l = x >>> halfBits;
+        int r = x & halfMask;
+        for (int k = 0; k < ROUNDS; k++) {
+            int t = l ^ round(r, roundKeys[k]);
+            l = r;
+            r = t;
+        }
+        return (l << halfBits) | r;
+    }
+
+    private int round(int r, long key) {
+        long z = (r + key) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z ^= z >>> 31;
+        return (int) z & halfMask;
+    }
+}
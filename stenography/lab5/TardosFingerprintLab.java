@@ -72,13 +72,13 @@ public final class TardosFingerprintLab {
 
         for (int user = 0; user < USERS; user++) {
             BufferedImage fingerprinted = embedFingerprint(cover, positions, code.u[user]);
-            ImageIO.write(fingerprinted, "bmp", usersOut.resolve(String.format(Locale.ROOT,
-                    "user_%02d.bmp", user + 1)).toFile());
+            BmpFile.write(fingerprinted, usersOut.resolve(String.format(Locale.ROOT,
+                    "user_%02d.bmp", user + 1)));
         }
 
         BufferedImage pirate = simulateInterleavingAttack(cover, positions, code.u, coalition, key);
         Path piratePath = out.resolve("pirate.bmp");
-        ImageIO.write(pirate, "bmp", piratePath.toFile());
+        BmpFile.write(pirate, piratePath);
 
         int[] pirateWord = extractFingerprint(pirate, positions);
         double[] scores = accusationScores(code, pirateWord);
@@ -222,22 +222,14 @@ public final class TardosFingerprintLab {
     }
 
     private static int[] keyedPositions(int w, int h, String key, int m) {
-        int n = w * h;
-        int[] p = new int[n];
-        for (int i = 0; i < n; i++) {
-            p[i] = i;
-        }
-        Random rnd = new Random(seedFromKey("positions:" + key));
-        for (int i = n - 1; i > 0; i--) {
-            int j = rnd.nextInt(i + 1);
-            int t = p[i];
-            p[i] = p[j];
-            p[j] = t;
-        }
-        return Arrays.copyOf(p, m);
+        return new KeyedPermutation(w * h, seedFromKey("positions:" + key)).prefix(m);
     }
 
     private static BufferedImage readGray(File file) throws IOException {
+        BufferedImage gray = BmpFile.readGray(file.toPath());
+        if (gray != null) {
+            return gray;
+        }
         BufferedImage img = ImageIO.read(file);
         if (img == null) {
             throw new IOException("Не удалось прочитать изображение: " + file);